@@ -0,0 +1,8 @@
+package Statistics;
+
+public enum BackpressurePolicy {
+    DROP_NEWEST, // The incoming event is discarded when the mailbox is full
+    DROP_OLDEST, // The oldest pending event is discarded to make room for the incoming one
+    CONFLATE,    // A pending event is replaced by the incoming one of its class and coalescing key; the oldest goes when full
+    BLOCK        // The dispatcher waits for room, pushing back on publishers
+}
@@ -0,0 +1,94 @@
+package Statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Mailbox for a subscriber that receives events in batches.
+ * <p>
+ * A drain collects up to {@code maxBatchSize} events, waiting at most
+ * {@code maxBatchDelayMicros} after the first one for the batch to fill, and hands
+ * them to the subscriber in a single call.
+ */
+class BatchSubscriberMailbox extends SubscriberMailbox {
+    private final Consumer<List<BaseEvent>> batchSubscriber;
+    private final WeakConsumer<?> weakBatchSubscriber; // Null unless the subscriber is held weakly
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+
+    BatchSubscriberMailbox(Consumer<List<BaseEvent>> batchSubscriber, int maxBatchSize, long maxBatchDelayMicros,
+                           SubscriberOptions options, Executor executor, SubscriberMetrics metrics, Conflator keys) {
+        super(null, options, executor, metrics, keys); // Delivery is done by drainOnce, not per event
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        if (maxBatchDelayMicros < 0) {
+            throw new IllegalArgumentException("maxBatchDelayMicros cannot be negative");
+        }
+        if (options.delivery() == DeliveryHint.INLINE) {
+            throw new IllegalArgumentException("Batch subscribers cannot be delivered inline");
+        }
+        this.batchSubscriber = batchSubscriber;
+        this.weakBatchSubscriber = WeakConsumer.behind(batchSubscriber);
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxBatchDelayMicros);
+    }
+
+    @Override
+    boolean isReclaimed() {
+        return weakBatchSubscriber != null && weakBatchSubscriber.isCleared();
+    }
+
+    @Override
+    void drainOnce() {
+        List<BaseEvent> batch = new ArrayList<>(Math.min(maxBatchSize, Math.max(1, mailbox.size())));
+        mailbox.drainTo(batch, maxBatchSize);
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // Give a partial batch until the deadline to fill up
+        long deadline = System.nanoTime() + maxBatchDelayNanos;
+        try {
+            while (batch.size() < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                BaseEvent event = mailbox.poll(remaining, TimeUnit.NANOSECONDS);
+                if (event == null) {
+                    break;
+                }
+                batch.add(event);
+                mailbox.drainTo(batch, maxBatchSize - batch.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore interrupted status and deliver what we have
+        }
+
+        if (conflates()) {
+            batch.replaceAll(SubscriberMailbox::toDeliver);
+            batch.removeIf(Objects::isNull); // Slots emptied by a drop since
+            if (batch.isEmpty()) {
+                return;
+            }
+        }
+        if (!isActive()) {
+            return; // Cancelled while the batch was filling up
+        }
+        long start = metrics.latency.isEnabled() ? System.nanoTime() : 0;
+        try {
+            batchSubscriber.accept(batch);
+        } catch (Exception e) {
+            metrics.errors.increment();
+            System.err.println("Error processing event batch: " + e.getMessage());
+        }
+        if (start != 0) {
+            metrics.latency.record(System.nanoTime() - start);
+        }
+    }
+}
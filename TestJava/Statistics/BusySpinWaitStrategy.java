@@ -0,0 +1,32 @@
+package Statistics;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Checks the condition in a tight loop, with only a spin-wait hint between checks.
+ */
+class BusySpinWaitStrategy implements WaitStrategy {
+    private static final int INTERRUPT_CHECK_MASK = 1023; // Check for interrupts every 1024 spins
+
+    @Override
+    public boolean await(BooleanSupplier available, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        for (int spins = 0; !available.getAsBoolean(); spins++) {
+            if ((spins & INTERRUPT_CHECK_MASK) == 0) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (timeoutNanos != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+            }
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+
+    @Override
+    public void signal() {
+        // Waiting consumers never stop checking
+    }
+}
@@ -0,0 +1,71 @@
+package Statistics;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The single pending slot for one coalescing key.
+ * <p>
+ * The slot itself is what travels through the event queue: it is enqueued only when
+ * it goes from empty to pending, and any event published while it is still pending
+ * overwrites the previous one in place. The dispatcher empties it when it gets there
+ * and delivers whatever is freshest at that moment.
+ */
+class ConflationSlot implements BaseEvent {
+    private final AtomicReference<BaseEvent> pending = new AtomicReference<>();
+    private BaseEvent lastDispatched; // Only touched by the dispatcher thread
+
+    /**
+     * Stores the event as the pending one for this key.
+     *
+     * @return true if the slot was empty and must now be enqueued
+     */
+    boolean publish(BaseEvent event) {
+        return pending.getAndSet(event) == null;
+    }
+
+    /**
+     * Empties the slot.
+     *
+     * @return the freshest pending event, or null if it equals the one dispatched last time
+     */
+    BaseEvent takeLatest() {
+        BaseEvent latest = pending.getAndSet(null);
+        if (latest == null || latest.equals(lastDispatched)) {
+            return null; // Nothing changed since the last delivery
+        }
+        lastDispatched = latest;
+        return latest;
+    }
+
+    /**
+     * Empties the slot, for a subscriber's mailbox, which delivers every value it takes.
+     *
+     * @return the pending event, or null if the slot is empty
+     */
+    BaseEvent take() {
+        return pending.getAndSet(null);
+    }
+
+    /**
+     * @return the event that would be delivered now, or null if the slot is empty
+     */
+    BaseEvent pending() {
+        return pending.get();
+    }
+
+    /**
+     * Empties the slot without delivering it, after its queue entry was dropped or refused.
+     *
+     * @param expected the event the slot is known to hold: the refused one, or the one seen pending when dropping
+     * @return false if another event was coalesced into the slot in the meantime; it was reported as
+     *         accepted, so the slot is left pending and must go back on the queue
+     */
+    boolean discard(BaseEvent expected) {
+        return pending.compareAndSet(expected, null);
+    }
+
+    @Override
+    public boolean isCoalescing() {
+        return false; // The slot is already the coalesced form
+    }
+}
@@ -0,0 +1,72 @@
+package Statistics;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Maps coalescing events to their {@link ConflationSlot}.
+ * <p>
+ * By default all events of one class share a slot. A key function registered for a
+ * class splits its events into one slot per key, e.g. per source or per metric.
+ */
+class Conflator {
+    private final ConcurrentHashMap<Class<?>, SlotGroup> groups = new ConcurrentHashMap<>();
+    private final Conflator keys; // Where key functions are registered; null if with this one
+
+    Conflator() {
+        this.keys = null;
+    }
+
+    /**
+     * Creates a conflator with slots of its own, split by the keys registered with another one,
+     * e.g. for a subscriber's mailbox. A key registered after the first event of its class
+     * reached this conflator does not apply to it.
+     */
+    Conflator(Conflator keys) {
+        this.keys = keys;
+    }
+
+    void registerKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction) {
+        Objects.requireNonNull(keyFunction, "keyFunction cannot be null");
+        groups.put(clazz, new SlotGroup(keyFunction));
+    }
+
+    /**
+     * Stores the event in its slot.
+     *
+     * @return the slot to enqueue, or null if the event replaced one that is still pending
+     */
+    ConflationSlot conflate(BaseEvent event) {
+        SlotGroup group = groups.get(event.getClass());
+        if (group == null) {
+            group = groups.computeIfAbsent(event.getClass(), clazz -> new SlotGroup(keys != null ? keys.keyFunction(clazz) : null));
+        }
+        ConflationSlot slot = group.slotFor(event);
+        return slot.publish(event) ? slot : null;
+    }
+
+    private Function<? super BaseEvent, ?> keyFunction(Class<?> clazz) {
+        SlotGroup group = groups.get(clazz);
+        return group != null ? group.keyFunction : null;
+    }
+
+    private static final class SlotGroup {
+        private final Function<? super BaseEvent, ?> keyFunction; // Null means one slot for the whole class
+        private final ConflationSlot classSlot = new ConflationSlot();
+        private final ConcurrentHashMap<Object, ConflationSlot> slots = new ConcurrentHashMap<>();
+
+        private SlotGroup(Function<? super BaseEvent, ?> keyFunction) {
+            this.keyFunction = keyFunction;
+        }
+
+        private ConflationSlot slotFor(BaseEvent event) {
+            if (keyFunction == null) {
+                return classSlot;
+            }
+            Object key = keyFunction.apply(event);
+            ConflationSlot slot = slots.get(key);
+            return slot != null ? slot : slots.computeIfAbsent(key, _ -> new ConflationSlot());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package Statistics;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * DDSketch: a {@link QuantileSketch} with a relative error guarantee.
+ * <p>
+ * Values are counted in logarithmically sized bins, bin {@code i} holding the values in
+ * {@code (gamma^(i-1), gamma^i]} with {@code gamma = (1 + a) / (1 - a)} for a relative
+ * accuracy {@code a}; reporting a bin by its centre is then within {@code a} of any value
+ * in it. Negative values are binned by magnitude in a second store, zero on its own.
+ * Merging adds bin counts, so it is exact. Should a store ever need more than
+ * {@value #MAX_BINS} bins, its lowest bins are folded together, which only affects the
+ * accuracy of the smallest magnitudes.
+ */
+final class DDSketch implements QuantileSketch {
+    private static final int MAX_BINS = 2048;
+    private static final double MIN_INDEXABLE = Double.MIN_NORMAL; // Smaller magnitudes count as zero
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final Store positive = new Store();
+    private final Store negative = new Store();
+    private long zeroCount;
+
+    DDSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("relativeAccuracy must be between 0 and 1");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    @Override
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Cannot add NaN");
+        }
+        if (value > MIN_INDEXABLE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1); // Centre of the bin in relative terms
+    }
+
+    @Override
+    public void merge(QuantileSketch other) {
+        if (!(other instanceof DDSketch sketch) || sketch.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Can only merge a DDSketch with the same relative accuracy");
+        }
+        positive.addAll(sketch.positive);
+        negative.addAll(sketch.negative);
+        zeroCount += sketch.zeroCount;
+    }
+
+    @Override
+    public double quantile(double quantile) {
+        long count = count();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (Math.min(Math.max(quantile, 0), 1) * (count - 1)); // Counting from 0
+        long cumulative = 0;
+        for (int i = negative.counts.length - 1; i >= 0; i--) { // Most negative first
+            cumulative += negative.counts[i];
+            if (cumulative > rank) {
+                return -value(negative.offset + i);
+            }
+        }
+        cumulative += zeroCount;
+        if (cumulative > rank) {
+            return 0;
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            cumulative += positive.counts[i];
+            if (cumulative > rank) {
+                return value(positive.offset + i);
+            }
+        }
+        return value(positive.offset + positive.counts.length - 1);
+    }
+
+    @Override
+    public long count() {
+        return negative.total + zeroCount + positive.total;
+    }
+
+    @Override
+    public void forEach(WeightedValueConsumer consumer) {
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            if (negative.counts[i] != 0) {
+                consumer.accept(-value(negative.offset + i), negative.counts[i]);
+            }
+        }
+        if (zeroCount != 0) {
+            consumer.accept(0, zeroCount);
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            if (positive.counts[i] != 0) {
+                consumer.accept(value(positive.offset + i), positive.counts[i]);
+            }
+        }
+    }
+
+    @Override
+    public QuantileSketch emptyCopy() {
+        return new DDSketch(relativeAccuracy);
+    }
+
+    /**
+     * Layout: kind, relative accuracy, zero count, then each store as its number of non-empty bins
+     * followed by the index delta and count of every one of them.
+     */
+    @Override
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(DD_SKETCH);
+        SketchEncoding.putDouble(out, relativeAccuracy);
+        SketchEncoding.putVarLong(out, zeroCount);
+        positive.write(out);
+        negative.write(out);
+        return out.toByteArray();
+    }
+
+    static DDSketch read(ByteBuffer source) {
+        DDSketch sketch = new DDSketch(SketchEncoding.getDouble(source));
+        sketch.zeroCount = SketchEncoding.getVarLong(source);
+        sketch.positive.read(source);
+        sketch.negative.read(source);
+        return sketch;
+    }
+
+    /**
+     * Counts per bin index, in an array covering the indexes from {@code offset} on.
+     */
+    private static final class Store {
+        private long[] counts = new long[0];
+        private int offset;
+        private long total;
+
+        void add(int index, long count) {
+            if (counts.length == 0) {
+                counts = new long[16];
+                offset = index - 8;
+            }
+            if (index < offset || index >= offset + counts.length) {
+                extendTo(index);
+            }
+            counts[Math.max(index - offset, 0)] += count; // Below the range once folded: the lowest bin
+            total += count;
+        }
+
+        private void extendTo(int index) {
+            int low = Math.min(offset, index);
+            int high = Math.max(offset + counts.length - 1, index);
+            if ((long) high - low + 1 > MAX_BINS) {
+                low = high - MAX_BINS + 1; // Fold the lowest bins into the new lowest one
+            }
+            long[] extended = new long[(int) Math.min(MAX_BINS, Math.max((long) high - low + 1, 2L * counts.length))];
+            int newOffset = index < offset ? high - extended.length + 1 : low; // Spare room on the side it grows to
+            for (int i = 0; i < counts.length; i++) {
+                extended[Math.max(offset + i - newOffset, 0)] += counts[i];
+            }
+            counts = extended;
+            offset = newOffset;
+        }
+
+        void addAll(Store other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        void write(ByteArrayOutputStream out) {
+            int bins = (int) Arrays.stream(counts).filter(count -> count != 0).count();
+            SketchEncoding.putVarLong(out, bins);
+            long previous = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    SketchEncoding.putZigZag(out, offset + i - previous);
+                    SketchEncoding.putVarLong(out, counts[i]);
+                    previous = offset + i;
+                }
+            }
+        }
+
+        void read(ByteBuffer source) {
+            int bins = SketchEncoding.getLength(source, MAX_BINS);
+            long index = 0;
+            for (int i = 0; i < bins; i++) {
+                index += SketchEncoding.getZigZag(source);
+                add((int) index, SketchEncoding.getVarLong(source));
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package Statistics;
+
+public enum DeliveryHint {
+    ASYNC, // Events go through the subscriber's mailbox and are delivered on the bus's executor
+    INLINE // Events are delivered directly on the dispatcher thread; for cheap, non-blocking subscribers only
+}
@@ -0,0 +1,6 @@
+package Statistics;
+
+public enum DispatchMode {
+    QUEUE, // Events are wrapped and handed over through a LinkedBlockingQueue
+    RING   // Events are written into pre-allocated, sequence-claimed ring slots (no allocation, no locks)
+}
@@ -0,0 +1,244 @@
+package Statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Subscriber lookup for the dispatcher.
+ * <p>
+ * Registrations are kept as copy-on-write arrays per subscribed type. For each
+ * concrete event class the dispatcher asks for, the matching registrations of the
+ * class, its superclasses and all of its interfaces are resolved once into a single
+ * array and cached. The cache is only invalidated when the registrations change, so
+ * the hot path is one map lookup followed by an array walk.
+ * <p>
+ * Keyed subscribers are kept apart, in one {@link KeyIndex} per type that has a
+ * subscription key function: the dispatcher extracts the key once per event and looks
+ * up the subscribers for that key, so the cost follows the number of matches rather
+ * than the number of keyed subscriptions.
+ * <p>
+ * Cancelled subscribers stay in the arrays, skipped by the dispatcher, until they make
+ * up half of all registrations; the arrays are then rebuilt without them. Cancelling
+ * is therefore constant time on average and never blocks dispatch.
+ */
+class DispatchTable {
+    private static final SubscriberMailbox[] NO_SUBSCRIBERS = new SubscriberMailbox[0];
+    private static final KeyIndex[] NO_KEY_INDEXES = new KeyIndex[0];
+    private static final int MIN_COMPACTION = 16; // Cancellations tolerated before compacting at all
+
+    private final ConcurrentHashMap<Class<?>, SubscriberMailbox[]> registrations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, SubscriberMailbox[]> resolved = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, KeyIndex> keyIndexes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, KeyIndex[]> resolvedKeyIndexes = new ConcurrentHashMap<>();
+    private final AtomicInteger registered = new AtomicInteger(); // Including cancelled entries not yet removed
+    private final AtomicInteger cancelled = new AtomicInteger();
+
+    Subscription add(Class<? extends BaseEvent> clazz, SubscriberMailbox mailbox) {
+        mailbox.registeredIn(this);
+        registrations.merge(clazz, new SubscriberMailbox[]{mailbox}, DispatchTable::concat);
+        registered.incrementAndGet();
+        invalidate();
+        return mailbox;
+    }
+
+    /**
+     * Sets the function that extracts the subscription key from events of the given type.
+     *
+     * @throws IllegalStateException if keyed subscribers are already registered for the type
+     */
+    synchronized void registerKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction) {
+        Objects.requireNonNull(keyFunction, "keyFunction cannot be null");
+        KeyIndex existing = keyIndexes.get(clazz);
+        if (existing != null && !existing.subscribers.isEmpty()) {
+            throw new IllegalStateException("Keyed subscribers are already registered for " + clazz.getName());
+        }
+        keyIndexes.put(clazz, new KeyIndex(keyFunction));
+        invalidate();
+    }
+
+    /**
+     * Registers a subscriber for the events of the given type whose subscription key equals {@code key}.
+     *
+     * @throws IllegalStateException if no key function has been registered for the type
+     */
+    synchronized Subscription addForKey(Class<? extends BaseEvent> clazz, Object key, SubscriberMailbox mailbox) {
+        Objects.requireNonNull(key, "key cannot be null");
+        KeyIndex index = keyIndexes.get(clazz);
+        if (index == null) {
+            throw new IllegalStateException("No subscription key registered for " + clazz.getName());
+        }
+        mailbox.registeredIn(this);
+        index.subscribers.merge(key, new SubscriberMailbox[]{mailbox}, DispatchTable::concat);
+        registered.incrementAndGet();
+        return mailbox; // The resolved indexes are shared, so there is nothing to invalidate
+    }
+
+    /**
+     * Called once by each mailbox that is cancelled.
+     */
+    void cancelled() {
+        int count = cancelled.incrementAndGet();
+        if (count >= MIN_COMPACTION && 2 * count >= registered.get()) {
+            compact();
+        }
+    }
+
+    private synchronized void compact() {
+        int removed = removeCancelled(registrations);
+        for (KeyIndex index : keyIndexes.values()) {
+            removed += removeCancelled(index.subscribers);
+        }
+        registered.addAndGet(-removed);
+        cancelled.addAndGet(-removed);
+        invalidate();
+    }
+
+    private static <K> int removeCancelled(ConcurrentHashMap<K, SubscriberMailbox[]> map) {
+        int removed = 0;
+        for (K key : map.keySet()) {
+            int[] removedHere = new int[1];
+            map.computeIfPresent(key, (_, mailboxes) -> {
+                SubscriberMailbox[] active = Arrays.stream(mailboxes)
+                        .filter(mailbox -> !mailbox.isCancelled())
+                        .toArray(SubscriberMailbox[]::new);
+                removedHere[0] = mailboxes.length - active.length;
+                return active.length == 0 ? null : active;
+            });
+            removed += removedHere[0];
+        }
+        return removed;
+    }
+
+    /**
+     * Returns every subscriber whose registered type is the given class or one of its supertypes.
+     * The returned array is shared and must not be modified.
+     */
+    SubscriberMailbox[] subscribersFor(Class<?> eventClass) {
+        SubscriberMailbox[] subscribers = resolved.get(eventClass);
+        return subscribers != null ? subscribers : resolved.computeIfAbsent(eventClass, this::resolve);
+    }
+
+    /**
+     * Returns the key indexes of the given class and its supertypes. The returned array is shared
+     * and must not be modified.
+     */
+    KeyIndex[] keyIndexesFor(Class<?> eventClass) {
+        KeyIndex[] indexes = resolvedKeyIndexes.get(eventClass);
+        return indexes != null ? indexes : resolvedKeyIndexes.computeIfAbsent(eventClass, this::resolveKeyIndexes);
+    }
+
+    /**
+     * @return true if any subscriber, keyed or not, may receive events of the given class
+     */
+    boolean hasSubscribers(Class<?> eventClass) {
+        if (subscribersFor(eventClass).length > 0) {
+            return true;
+        }
+        for (KeyIndex index : keyIndexesFor(eventClass)) {
+            if (!index.subscribers.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return every registered subscriber
+     */
+    List<SubscriberMailbox> all() {
+        List<SubscriberMailbox> all = new ArrayList<>();
+        for (SubscriberMailbox[] registered : registrations.values()) {
+            all.addAll(Arrays.asList(registered));
+        }
+        for (KeyIndex index : keyIndexes.values()) {
+            for (SubscriberMailbox[] registered : index.subscribers.values()) {
+                all.addAll(Arrays.asList(registered));
+            }
+        }
+        return all;
+    }
+
+    private void invalidate() {
+        // A resolution racing with this clear either holds its bin lock (and is removed once it
+        // completes) or starts afterwards and already sees the updated registrations.
+        resolved.clear();
+        resolvedKeyIndexes.clear();
+    }
+
+    private SubscriberMailbox[] resolve(Class<?> eventClass) {
+        List<SubscriberMailbox> matches = new ArrayList<>();
+        for (Class<?> type : typeHierarchy(eventClass)) {
+            SubscriberMailbox[] registered = registrations.get(type);
+            if (registered != null) {
+                matches.addAll(Arrays.asList(registered));
+            }
+        }
+        return matches.isEmpty() ? NO_SUBSCRIBERS : matches.toArray(NO_SUBSCRIBERS);
+    }
+
+    private KeyIndex[] resolveKeyIndexes(Class<?> eventClass) {
+        List<KeyIndex> matches = new ArrayList<>();
+        for (Class<?> type : typeHierarchy(eventClass)) {
+            KeyIndex index = keyIndexes.get(type);
+            if (index != null) {
+                matches.add(index);
+            }
+        }
+        return matches.isEmpty() ? NO_KEY_INDEXES : matches.toArray(NO_KEY_INDEXES);
+    }
+
+    private static Set<Class<?>> typeHierarchy(Class<?> eventClass) {
+        Set<Class<?>> types = new LinkedHashSet<>();
+        for (Class<?> type = eventClass; type != null; type = type.getSuperclass()) {
+            types.add(type);
+        }
+        // Interfaces of every class in the chain, including inherited super-interfaces
+        List<Class<?>> pending = new ArrayList<>(types);
+        for (int i = 0; i < pending.size(); i++) {
+            for (Class<?> anInterface : pending.get(i).getInterfaces()) {
+                if (types.add(anInterface)) {
+                    pending.add(anInterface);
+                }
+            }
+        }
+        return types;
+    }
+
+    private static SubscriberMailbox[] concat(SubscriberMailbox[] existing, SubscriberMailbox[] added) {
+        SubscriberMailbox[] combined = Arrays.copyOf(existing, existing.length + added.length);
+        System.arraycopy(added, 0, combined, existing.length, added.length);
+        return combined;
+    }
+
+    /**
+     * Keyed subscribers of one type, indexed by the key they subscribed to.
+     */
+    static final class KeyIndex {
+        private final Function<? super BaseEvent, ?> keyFunction;
+        private final ConcurrentHashMap<Object, SubscriberMailbox[]> subscribers = new ConcurrentHashMap<>();
+
+        private KeyIndex(Function<? super BaseEvent, ?> keyFunction) {
+            this.keyFunction = keyFunction;
+        }
+
+        /**
+         * Extracts the event's key and returns the subscribers registered for it. The returned
+         * array is shared and must not be modified.
+         */
+        SubscriberMailbox[] subscribersFor(BaseEvent event) {
+            if (subscribers.isEmpty()) {
+                return NO_SUBSCRIBERS;
+            }
+            Object key = keyFunction.apply(event);
+            SubscriberMailbox[] matches = key != null ? subscribers.get(key) : null;
+            return matches != null ? matches : NO_SUBSCRIBERS;
+        }
+    }
+}
@@ -1,17 +1,39 @@
 package Statistics;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 public interface EventBus {
+    Duration DEFAULT_DRAIN_DEADLINE = Duration.ofSeconds(60);
 
     /**
      * Adds a subscriber for events of the specified type.
      *
      * @param clazz the class of the event type
      * @param subscriber the consumer that will handle the event
+     * @return a handle that stops delivery to the subscriber when cancelled
      */
-    void addSubscriber(Class<? extends BaseEvent> clazz, Consumer<BaseEvent> subscriber);
+    default Subscription addSubscriber(Class<? extends BaseEvent> clazz, Consumer<BaseEvent> subscriber) {
+        return addSubscriber(clazz, subscriber, SubscriberOptions.DEFAULT);
+    }
+
+    /**
+     * Adds a subscriber for events of the specified type with its own delivery settings. Cheap,
+     * non-blocking subscribers can use {@link SubscriberOptions#INLINE} to run on the dispatcher thread,
+     * and subscribers with a lifecycle of their own can be held weakly with
+     * {@link SubscriberOptions#withWeakReference}.
+     *
+     * @param clazz the class of the event type
+     * @param subscriber the consumer that will handle the event
+     * @param options delivery hint, mailbox capacity, backpressure policy and reference strength for this subscriber
+     * @return a handle that stops delivery to the subscriber when cancelled
+     */
+    Subscription addSubscriber(Class<? extends BaseEvent> clazz, Consumer<BaseEvent> subscriber, SubscriberOptions options);
 
     /**
      * Adds a subscriber for events of the specified type with a filter.
@@ -19,18 +41,152 @@ public interface EventBus {
      * @param clazz the class of the event type
      * @param filter the predicate to filter events
      * @param subscriber the consumer that will handle the event
+     * @return a handle that stops delivery to the subscriber when cancelled
+     */
+    default Subscription addSubscriberForFilteredEvents(Class<? extends BaseEvent> clazz, Predicate<BaseEvent> filter, Consumer<BaseEvent> subscriber) {
+        return addSubscriberForFilteredEvents(clazz, filter, subscriber, SubscriberOptions.DEFAULT);
+    }
+
+    /**
+     * Adds a subscriber for events of the specified type with a filter and its own delivery settings.
+     *
+     * @param clazz the class of the event type
+     * @param filter the predicate to filter events
+     * @param subscriber the consumer that will handle the event
+     * @param options delivery hint, mailbox capacity, backpressure policy and reference strength for this subscriber
+     * @return a handle that stops delivery to the subscriber when cancelled
+     */
+    Subscription addSubscriberForFilteredEvents(Class<? extends BaseEvent> clazz, Predicate<BaseEvent> filter, Consumer<BaseEvent> subscriber, SubscriberOptions options);
+
+    /**
+     * Sets the function that extracts the subscription key from events of the specified type, for use
+     * with {@link #addSubscriberForKey}. The key is extracted once per event and looked up in an index,
+     * so keyed subscribers cost nothing for events with other keys.
+     *
+     * @param clazz the class of the event type
+     * @param keyFunction extracts the subscription key, e.g. the source id or metric name
+     * @throws IllegalStateException if keyed subscribers are already registered for the type
+     */
+    void registerSubscriptionKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction);
+
+    /**
+     * Adds a subscriber for the events of the specified type whose subscription key equals the given key.
+     * Use {@link #addSubscriberForFilteredEvents} for conditions that are not a key lookup.
+     *
+     * @param clazz the class of the event type; its key function must have been registered
+     * @param key the key to match, compared with {@code equals}
+     * @param subscriber the consumer that will handle the event
+     * @return a handle that stops delivery to the subscriber when cancelled
+     * @throws IllegalStateException if no subscription key has been registered for the type
+     */
+    default Subscription addSubscriberForKey(Class<? extends BaseEvent> clazz, Object key, Consumer<BaseEvent> subscriber) {
+        return addSubscriberForKey(clazz, key, subscriber, SubscriberOptions.DEFAULT);
+    }
+
+    /**
+     * Adds a subscriber for the events of the specified type whose subscription key equals the given key,
+     * with its own delivery settings.
+     *
+     * @param clazz the class of the event type; its key function must have been registered
+     * @param key the key to match, compared with {@code equals}
+     * @param subscriber the consumer that will handle the event
+     * @param options delivery hint, mailbox capacity, backpressure policy and reference strength for this subscriber
+     * @return a handle that stops delivery to the subscriber when cancelled
+     * @throws IllegalStateException if no subscription key has been registered for the type
+     */
+    Subscription addSubscriberForKey(Class<? extends BaseEvent> clazz, Object key, Consumer<BaseEvent> subscriber, SubscriberOptions options);
+
+    /**
+     * Adds a subscriber that receives events of the specified type in batches.
+     *
+     * @param clazz the class of the event type
+     * @param subscriber the consumer that will handle each batch
+     * @param maxBatchSize the maximum number of events in a batch
+     * @param maxBatchDelayMicros how long a partial batch may wait for more events
+     * @return a handle that stops delivery to the subscriber when cancelled
+     */
+    default Subscription addBatchSubscriber(Class<? extends BaseEvent> clazz, Consumer<List<BaseEvent>> subscriber, int maxBatchSize, long maxBatchDelayMicros) {
+        return addBatchSubscriber(clazz, subscriber, maxBatchSize, maxBatchDelayMicros, SubscriberOptions.DEFAULT);
+    }
+
+    /**
+     * Adds a subscriber that receives events of the specified type in batches, with its own mailbox settings.
+     *
+     * @param clazz the class of the event type
+     * @param subscriber the consumer that will handle each batch
+     * @param maxBatchSize the maximum number of events in a batch
+     * @param maxBatchDelayMicros how long a partial batch may wait for more events
+     * @param options mailbox capacity, backpressure policy and reference strength for this subscriber
+     * @return a handle that stops delivery to the subscriber when cancelled
+     */
+    Subscription addBatchSubscriber(Class<? extends BaseEvent> clazz, Consumer<List<BaseEvent>> subscriber, int maxBatchSize, long maxBatchDelayMicros, SubscriberOptions options);
+
+    /**
+     * Sets how coalescing events of the specified type are conflated. Events with the same key
+     * share one pending slot, and a newer event replaces the pending one. Without a key function,
+     * all events of the type share a single slot.
+     *
+     * @param clazz the class of the coalescing event type
+     * @param keyFunction extracts the coalescing key, e.g. the source or metric name
+     */
+    void registerCoalescingKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction);
+
+    /**
+     * Publishes an event to all subscribers. If the event queue is full, the bus's overflow policy decides
+     * whether the event is refused, replaces the oldest queued event, waits for room or spills.
+     *
+     * @param event the event to publish
+     * @return what happened to the event
+     */
+    PublishResult publishEvent(BaseEvent event);
+
+    /**
+     * Publishes an event without ever waiting for room in the event queue.
+     *
+     * @param event the event to publish
+     * @return what happened to the event; {@link PublishResult#REJECTED} where {@link #publishEvent} would wait
      */
-    void addSubscriberForFilteredEvents(Class<? extends BaseEvent> clazz, Predicate<BaseEvent> filter, Consumer<BaseEvent> subscriber);
+    PublishResult tryPublish(BaseEvent event);
 
     /**
-     * Publishes an event to all subscribers.
+     * Publishes an event without blocking the caller. Where {@link #publishEvent} would wait for room,
+     * the returned stage completes once the event has been queued or the wait has timed out.
      *
      * @param event the event to publish
+     * @return a stage completing with what happened to the event
+     */
+    CompletionStage<PublishResult> publishAsync(BaseEvent event);
+
+    /**
+     * Publishes a batch of events, in iteration order.
+     *
+     * @param events the events to publish
+     * @return the number of events accepted
      */
-    boolean publishEvent(BaseEvent event);
+    int publishEvents(Collection<? extends BaseEvent> events);
 
     /**
-     * Shuts down the event bus, stopping all event processing.
+     * Publishes a batch of events, in array order.
+     *
+     * @param events the events to publish
+     * @return the number of events accepted
+     */
+    int publishEvents(BaseEvent... events);
+
+    /**
+     * Shuts down the event bus, stopping all event processing. Events already accepted are
+     * delivered for up to {@link #DEFAULT_DRAIN_DEADLINE}.
+     */
+    default void shutdown() {
+        shutdown(DEFAULT_DRAIN_DEADLINE);
+    }
+
+    /**
+     * Shuts down the event bus: stops accepting events, delivers the events already accepted until
+     * the deadline, then stops all event processing. Later publishes return {@link PublishResult#CLOSED}.
+     *
+     * @param drainDeadline how long to keep delivering pending events
+     * @return the number of accepted events that were never delivered
      */
-    void shutdown();
+    int shutdown(Duration drainDeadline);
 }
\ No newline at end of file
@@ -1,97 +1,314 @@
 package Statistics;
 
+import javax.management.ObjectName;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 public class EventBusImpl implements EventBus {
+    public static final int DEFAULT_RING_CAPACITY = 1024;
+    public static final int DEFAULT_QUEUE_CAPACITY = 64 * 1024; // Bounds memory behind a slow dispatcher; beyond it the overflow policy applies
+    public static final int DEFAULT_POOL_SIZE = 10;
+    private static final Executor ASYNC_PUBLISHER = runnable -> Thread.ofVirtual().start(runnable);
+    private static final int DISPATCH_BATCH = 256; // Events taken from the queue per dispatcher pass
+    private static final long DRAIN_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1); // How often shutdown checks for a drained bus
 
-    private final ConcurrentHashMap<Class<? extends BaseEvent>, Queue<EventSubscriber<BaseEvent>>> subscribers = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Class<? extends BaseEvent>, BaseEvent> latestEvents = new ConcurrentHashMap<>(); // Store latest events
-    private final BlockingQueue<Event<BaseEvent>> eventQueue = new LinkedBlockingQueue<>(); // Event queue
-    private final ExecutorService executorService = Executors.newFixedThreadPool(10);
+    private final DispatchTable subscribers = new DispatchTable(); // Subscribers resolved per concrete event class
+    private final Conflator conflator = new Conflator(); // One pending slot per coalescing key
+    private final EventQueue eventQueue; // Hand-off to the event processing thread
+    private final OverflowHandler overflowHandler; // What to do when the event queue is full
+    private final Executor deliveryExecutor; // Runs the subscriber mailbox drains
+    private final ExecutorService executorService; // Set only when the bus owns the delivery executor
+    private final EventBusMetricsImpl metrics;
+    private final Thread dispatcherThread;
+    private final AtomicBoolean closed = new AtomicBoolean(false); // Set once shutdown has started
+    private volatile boolean accepting = true; // Cleared when shutdown starts
+    private volatile boolean dispatching; // True from before the dispatcher takes events off the queue until it has handed them on
+    private volatile int abandoned;       // Events the dispatcher held when it was stopped
 
     public EventBusImpl() {
+        this(DispatchMode.QUEUE);
+    }
+
+    /**
+     * Creates an event bus with the given dispatch mode and the default capacity for that mode,
+     * {@link #DEFAULT_RING_CAPACITY} or {@link #DEFAULT_QUEUE_CAPACITY}.
+     */
+    public EventBusImpl(DispatchMode dispatchMode) {
+        this(builder().dispatchMode(dispatchMode));
+    }
+
+    /**
+     * Creates an event bus with the given dispatch mode and a bounded event queue.
+     *
+     * @param dispatchMode how published events are handed to the event processing thread
+     * @param capacity maximum number of queued events (rounded up to a power of two in {@link DispatchMode#RING} mode)
+     */
+    public EventBusImpl(DispatchMode dispatchMode, int capacity) {
+        this(builder().dispatchMode(dispatchMode).capacity(capacity));
+    }
+
+    private EventBusImpl(Builder builder) {
+        this.eventQueue = switch (builder.dispatchMode) {
+            case RING -> new EventRingBuffer(builder.capacity > 0 ? builder.capacity : DEFAULT_RING_CAPACITY);
+            case QUEUE -> new LinkedEventQueue(builder.capacity > 0 ? builder.capacity : DEFAULT_QUEUE_CAPACITY);
+        };
+        this.metrics = new EventBusMetricsImpl(eventQueue);
+        this.overflowHandler = new OverflowHandler(eventQueue, metrics, builder.overflowPolicy, builder.blockTimeoutNanos,
+                builder.spillTier != null ? builder.spillTier : new ConcurrentLinkedQueue<>());
+        this.executorService = switch (builder.executionMode) {
+            case THREAD_POOL -> Executors.newFixedThreadPool(builder.poolSize);
+            case VIRTUAL_THREADS -> Executors.newVirtualThreadPerTaskExecutor();
+            case CALLER_EXECUTOR, INLINE -> null;
+        };
+        this.deliveryExecutor = switch (builder.executionMode) {
+            case THREAD_POOL, VIRTUAL_THREADS -> executorService;
+            case CALLER_EXECUTOR -> builder.executor;
+            case INLINE -> Runnable::run; // Drain on the dispatcher thread
+        };
+
         // Start the event processing thread
-        Thread eventProcessorThread = new Thread(this::processEvents);
-        eventProcessorThread.start();
+        this.dispatcherThread = new Thread(this::processEvents, "event-bus-dispatcher");
+        dispatcherThread.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return live queue, publish and delivery metrics of this bus
+     */
+    public EventBusMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Exposes the {@link #metrics()} of this bus over JMX until it is shut down.
+     *
+     * @param name distinguishes this bus from others in the same JVM
+     * @return the name the MBean was registered under, {@code Statistics:type=EventBus,name=<name>}
+     */
+    public ObjectName registerMBean(String name) {
+        return metrics.registerMBean(name);
     }
 
     @Override
-    public void addSubscriber(Class<? extends BaseEvent> clazz, Consumer<BaseEvent> subscriber){
+    public Subscription addSubscriber(Class<? extends BaseEvent> clazz, Consumer<BaseEvent> subscriber, SubscriberOptions options){
         Objects.requireNonNull(subscriber, "subscriber cannot be null");
-        subscribers.computeIfAbsent(clazz, key -> new ConcurrentLinkedQueue<>()).add(new EventSubscriber<BaseEvent>(subscriber));
+        Objects.requireNonNull(options, "options cannot be null");
+        SubscriberMailbox mailbox = new SubscriberMailbox(new EventSubscriber<BaseEvent>(hold(subscriber, options)), options, deliveryExecutor,
+                metrics.newSubscriber(clazz), conflator);
+        return subscribers.add(clazz, mailbox);
     }
 
 
     @Override
-    public void addSubscriberForFilteredEvents(Class<? extends BaseEvent> clazz, Predicate<BaseEvent> filter, Consumer<BaseEvent> subscriber) {
+    public Subscription addSubscriberForFilteredEvents(Class<? extends BaseEvent> clazz, Predicate<BaseEvent> filter, Consumer<BaseEvent> subscriber, SubscriberOptions options) {
         Objects.requireNonNull(subscriber, "subscriber cannot be null");
+        Objects.requireNonNull(options, "options cannot be null");
 
         // Create a new EventSubscriber with the correct types
-        EventSubscriber<BaseEvent> eventSubscriber = new EventSubscriber<BaseEvent>(filter, subscriber);
+        EventSubscriber<BaseEvent> eventSubscriber = new EventSubscriber<BaseEvent>(filter, hold(subscriber, options));
 
-        subscribers.computeIfAbsent(clazz, key -> new ConcurrentLinkedQueue<>()).add(eventSubscriber);
+        return subscribers.add(clazz, new SubscriberMailbox(eventSubscriber, options, deliveryExecutor, metrics.newSubscriber(clazz), conflator));
     }
 
     @Override
-    public boolean publishEvent(BaseEvent event) {
-        if ( event.isCoalescing())
-        {
-            Queue<EventSubscriber<BaseEvent>> consumers = subscribers.get(event.getClass());
-            if (consumers != null) {
-                // Check if the event is different from the last published event
-                if (isDifferentEvent(event, latestEvents.get(event.getClass()))) {
-                    latestEvents.put(event.getClass(), event); // Update the latest event
-                    // Add the event to the queue for processing
-                    return eventQueue.offer(new Event<>(event));
-                }
+    public void registerSubscriptionKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction) {
+        subscribers.registerKey(clazz, keyFunction);
+    }
+
+    @Override
+    public Subscription addSubscriberForKey(Class<? extends BaseEvent> clazz, Object key, Consumer<BaseEvent> subscriber, SubscriberOptions options) {
+        Objects.requireNonNull(subscriber, "subscriber cannot be null");
+        Objects.requireNonNull(options, "options cannot be null");
+        SubscriberMailbox mailbox = new SubscriberMailbox(new EventSubscriber<BaseEvent>(hold(subscriber, options)), options, deliveryExecutor,
+                metrics.newSubscriber(clazz), conflator);
+        return subscribers.addForKey(clazz, key, mailbox);
+    }
+
+    @Override
+    public Subscription addBatchSubscriber(Class<? extends BaseEvent> clazz, Consumer<List<BaseEvent>> subscriber, int maxBatchSize, long maxBatchDelayMicros, SubscriberOptions options) {
+        Objects.requireNonNull(subscriber, "subscriber cannot be null");
+        Objects.requireNonNull(options, "options cannot be null");
+        BatchSubscriberMailbox mailbox = new BatchSubscriberMailbox(hold(subscriber, options), maxBatchSize, maxBatchDelayMicros, options, deliveryExecutor,
+                metrics.newSubscriber(clazz), conflator);
+        return subscribers.add(clazz, mailbox);
+    }
+
+    private static <T> Consumer<T> hold(Consumer<T> subscriber, SubscriberOptions options) {
+        return options.weakReference() ? new WeakConsumer<>(subscriber) : subscriber;
+    }
+
+    @Override
+    public void registerCoalescingKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction) {
+        conflator.registerKey(clazz, keyFunction);
+    }
+
+    @Override
+    public PublishResult publishEvent(BaseEvent event) {
+        return publish(event, true);
+    }
+
+    @Override
+    public PublishResult tryPublish(BaseEvent event) {
+        return publish(event, false);
+    }
+
+    @Override
+    public CompletionStage<PublishResult> publishAsync(BaseEvent event) {
+        PublishResult result = enqueue(event, false);
+        if (result != PublishResult.REJECTED || !overflowHandler.blocksWhenFull()) {
+            metrics.recordPublish(result);
+            return CompletableFuture.completedFuture(result);
+        }
+        // The queue is full: wait for room on a virtual thread instead of the caller's
+        return CompletableFuture.supplyAsync(() -> publish(event, true), ASYNC_PUBLISHER);
+    }
+
+    private PublishResult publish(BaseEvent event, boolean mayBlock) {
+        PublishResult result = enqueue(event, mayBlock);
+        metrics.recordPublish(result);
+        return result;
+    }
+
+    private PublishResult enqueue(BaseEvent event, boolean mayBlock) {
+        if (!accepting) {
+            return PublishResult.CLOSED;
+        }
+        BaseEvent queued = toDispatch(event);
+        if (queued == null) {
+            return PublishResult.COALESCED; // Conflated into an event that is still pending
+        }
+        // Add the event to the queue for processing
+        return overflowHandler.offer(event, queued, mayBlock);
+    }
+
+    @Override
+    public int publishEvents(Collection<? extends BaseEvent> events) {
+        if (!accepting) {
+            for (int i = 0; i < events.size(); i++) {
+                metrics.recordPublish(PublishResult.CLOSED);
             }
-            return true;
+            return 0;
         }
-        else {
-            // Add the event to the queue for processing
-            return eventQueue.offer(new Event<>(event));
+        BaseEvent[] pending = new BaseEvent[events.size()];
+        BaseEvent[] published = new BaseEvent[events.size()]; // The event behind each pending entry
+        int count = 0;
+        int accepted = 0;
+        for (BaseEvent event : events) {
+            BaseEvent queued = toDispatch(event);
+            if (queued != null) {
+                published[count] = event;
+                pending[count++] = queued;
+            } else {
+                accepted++; // Coalesced
+                metrics.recordPublish(PublishResult.COALESCED);
+            }
+        }
+
+        // Enqueue as much of the burst as fits in one go, then apply the overflow policy to the rest
+        int enqueued = eventQueue.tryOfferAll(pending, count);
+        accepted += enqueued;
+        for (int i = 0; i < enqueued; i++) {
+            metrics.recordPublish(PublishResult.ACCEPTED);
         }
+        for (int i = enqueued; i < count; i++) {
+            PublishResult result = overflowHandler.offer(published[i], pending[i], true);
+            metrics.recordPublish(result);
+            if (result.isAccepted()) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    @Override
+    public int publishEvents(BaseEvent... events) {
+        return publishEvents(Arrays.asList(events));
     }
 
-    private boolean isDifferentEvent(BaseEvent newEvent, BaseEvent lastEvent) {
-        if (lastEvent == null) {
-            return true; // If no last event, consider it different
+    /**
+     * @return what to put on the event queue for this event, or null if nothing needs to be enqueued
+     */
+    private BaseEvent toDispatch(BaseEvent event) {
+        if (event.isCoalescing()) {
+            if (!subscribers.hasSubscribers(event.getClass())) {
+                return null; // Nobody is interested in the latest value
+            }
+            // Overwrite the pending event for this key; only an empty slot goes on the queue
+            return conflator.conflate(event);
         }
-        return !newEvent.equals(lastEvent); // Compare events
+        return event;
     }
 
     private void processEvents() {
+        BaseEvent[] batch = new BaseEvent[DISPATCH_BATCH];
+        int count = 0;
+        int next = 0; // Index of the event being dispatched
         while (true) {
             try {
-                Event<BaseEvent> event = eventQueue.take(); // Block until an event is available
-                BaseEvent baseEvent = event.getEvent(); // Get the event
-                Class<? extends BaseEvent> eventClass = baseEvent.getClass();
-                Queue<EventSubscriber<BaseEvent>> consumers = subscribers.get(eventClass);
-
-                if (consumers != null) {
-                    // Create a list of CompletableFutures for each consumer
-                    CompletableFuture[] futures = consumers.stream()
-                            .map(consumer -> CompletableFuture.runAsync(() -> {
-                                try {
-                                    // Check if the event passes the filter (if any)
-                                    if (consumer.test(baseEvent)) {
-                                        consumer.subscriber.accept(baseEvent);
-                                    }
-                                } catch (Exception e) {
-                                    System.err.println("Error processing event: " + e.getMessage());
-                                }
-                            }, executorService)) // Use the executor service for async execution
-                            .toArray(CompletableFuture[]::new);
-
-                    // Combine all futures and wait for them to complete
-                    CompletableFuture<Void> allOf = CompletableFuture.allOf(futures);
-                    allOf.join(); // Wait for all consumers to finish processing
+                dispatching = true; // Raised before events leave the queue, so isDrained never finds an event in neither place
+                overflowHandler.refill(); // Move requeued slots and spilled events back now that there may be room
+                next = 0;
+                count = eventQueue.drainTo(batch);
+                if (count == 0) {
+                    dispatching = false;
+                    eventQueue.awaitEvent(); // Wait with the flag down, so an idle dispatcher does not hold up a shutdown
+                    continue;
                 }
+
+                Class<? extends BaseEvent> eventClass = null;
+                SubscriberMailbox[] consumers = null;
+                DispatchTable.KeyIndex[] keyIndexes = null;
+                LatencyRecorder latency = null;
+                boolean timed = metrics.isLatencyEnabled();
+                for (; next < count; next++) {
+                    BaseEvent baseEvent = batch[next];
+                    batch[next] = null;
+                    if (baseEvent == OverflowHandler.SPILL_SIGNAL) {
+                        continue;
+                    }
+                    if (baseEvent instanceof ConflationSlot slot) {
+                        baseEvent = slot.takeLatest(); // Deliver the freshest value for this key
+                        if (baseEvent == null) {
+                            continue;
+                        }
+                    }
+                    if (baseEvent.getClass() != eventClass) { // Bursts are usually one type, so reuse the lookup
+                        eventClass = baseEvent.getClass();
+                        consumers = subscribers.subscribersFor(eventClass);
+                        keyIndexes = subscribers.keyIndexesFor(eventClass);
+                        latency = timed ? metrics.dispatchLatency(eventClass) : null;
+                    }
+
+                    // Hand the event to each subscriber's mailbox; delivery is pipelined per subscriber
+                    long start = timed ? System.nanoTime() : 0;
+                    for (SubscriberMailbox mailbox : consumers) {
+                        mailbox.offer(baseEvent);
+                    }
+                    for (DispatchTable.KeyIndex index : keyIndexes) {
+                        for (SubscriberMailbox mailbox : keyedSubscribers(index, baseEvent)) {
+                            mailbox.offer(baseEvent);
+                        }
+                    }
+                    if (timed) {
+                        latency.record(System.nanoTime() - start);
+                    }
+                }
+                dispatching = false;
             } catch (InterruptedException e) {
+                abandoned = count - next; // Including an event that only reached some of its subscribers
                 Thread.currentThread().interrupt(); // Restore interrupted status
                 break; // Exit the loop if interrupted
             }
@@ -99,19 +316,194 @@ public class EventBusImpl implements EventBus {
     }
 
 
+    private static SubscriberMailbox[] keyedSubscribers(DispatchTable.KeyIndex index, BaseEvent event) {
+        try {
+            return index.subscribersFor(event);
+        } catch (RuntimeException e) {
+            // A failing key function must not stop the dispatcher
+            System.err.println("Error extracting subscription key: " + e.getMessage());
+            return new SubscriberMailbox[0];
+        }
+    }
+
+    /**
+     * Stops accepting events, then gives the dispatcher and the subscribers until the deadline to
+     * deliver what is already queued. Whatever is still queued at the deadline is discarded, the
+     * dispatcher thread is stopped and a delivery executor owned by the bus is shut down.
+     *
+     * @return the number of events that were accepted but not delivered; 0 if the bus was already shut down
+     */
     @Override
-    public void shutdown() {
-        executorService.shutdown();
+    public int shutdown(Duration drainDeadline) {
+        if (!closed.compareAndSet(false, true)) {
+            return 0;
+        }
+        long deadline = System.nanoTime() + drainDeadline.toNanos();
+        stopAccepting();
+        metrics.unregisterMBean();
+
+        // Let the dispatcher and the subscribers work through the backlog
+        while (!isDrained() && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(DRAIN_POLL_NANOS);
+        }
+        dispatcherThread.interrupt();
         try {
-            if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-                if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
-                    System.err.println("Executor service did not terminate");
-                }
-            }
+            dispatcherThread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
         } catch (InterruptedException e) {
-            executorService.shutdownNow();
-            Thread.currentThread().interrupt(); // Restore interrupted status
+            Thread.currentThread().interrupt(); // Restore interrupted status and count what is left
+        }
+        int undelivered = abandoned + overflowHandler.discardBacklog();
+        for (BaseEvent event = eventQueue.poll(); event != null; event = eventQueue.poll()) {
+            if (event != OverflowHandler.SPILL_SIGNAL) {
+                undelivered++;
+            }
+        }
+
+        if (executorService != null) {
+            executorService.shutdown();
+            try {
+                executorService.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // Restore interrupted status
+            }
+        }
+        for (SubscriberMailbox mailbox : subscribers.all()) {
+            undelivered += mailbox.discardPending();
+        }
+        if (executorService != null && !executorService.isTerminated()) {
+            executorService.shutdownNow(); // Interrupt subscribers that are still running
+        }
+        return undelivered;
+    }
+
+    /**
+     * Makes later publishes return {@link PublishResult#CLOSED} without starting the drain yet.
+     */
+    void stopAccepting() {
+        accepting = false;
+    }
+
+    private boolean isDrained() {
+        if (eventQueue.size() > 0 || overflowHandler.hasBacklog() || dispatching) {
+            return false;
+        }
+        for (SubscriberMailbox mailbox : subscribers.all()) {
+            if (!mailbox.isIdle()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the construction options of an {@link EventBusImpl}.
+     */
+    public static final class Builder {
+        private DispatchMode dispatchMode = DispatchMode.QUEUE;
+        private int capacity; // Zero selects the default for the dispatch mode
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private long blockTimeoutNanos = Long.MAX_VALUE;
+        private Queue<BaseEvent> spillTier;
+        private ExecutionMode executionMode = ExecutionMode.THREAD_POOL;
+        private int poolSize = DEFAULT_POOL_SIZE;
+        private Executor executor;
+
+        private Builder() {
+        }
+
+        /**
+         * @param dispatchMode how published events are handed to the event processing thread
+         */
+        public Builder dispatchMode(DispatchMode dispatchMode) {
+            this.dispatchMode = Objects.requireNonNull(dispatchMode, "dispatchMode cannot be null");
+            return this;
+        }
+
+        /**
+         * Bounds the event queue. Defaults to {@link #DEFAULT_RING_CAPACITY} slots in
+         * {@link DispatchMode#RING} mode and {@link #DEFAULT_QUEUE_CAPACITY} events in
+         * {@link DispatchMode#QUEUE} mode.
+         *
+         * @param capacity maximum number of queued events (rounded up to a power of two in {@link DispatchMode#RING} mode)
+         */
+        public Builder capacity(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be positive");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param overflowPolicy what a publish does when the event queue is full; defaults to {@link OverflowPolicy#BLOCK}
+         */
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "overflowPolicy cannot be null");
+            return this;
+        }
+
+        /**
+         * @param blockTimeout how long a publish waits for room under {@link OverflowPolicy#BLOCK}; waits indefinitely by default
+         */
+        public Builder blockTimeout(Duration blockTimeout) {
+            this.blockTimeoutNanos = blockTimeout.toNanos();
+            return this;
+        }
+
+        /**
+         * @param spillTier where events go under {@link OverflowPolicy#SPILL}; an unbounded in-memory queue by default.
+         *                  A publish is rejected if the tier refuses the event.
+         */
+        public Builder spillTier(Queue<BaseEvent> spillTier) {
+            this.spillTier = Objects.requireNonNull(spillTier, "spillTier cannot be null");
+            return this;
+        }
+
+        /**
+         * Runs subscribers on a fixed pool of platform threads owned by the bus.
+         *
+         * @param poolSize the number of threads
+         */
+        public Builder threadPool(int poolSize) {
+            if (poolSize <= 0) {
+                throw new IllegalArgumentException("poolSize must be positive");
+            }
+            this.executionMode = ExecutionMode.THREAD_POOL;
+            this.poolSize = poolSize;
+            return this;
+        }
+
+        /**
+         * Runs every mailbox drain on its own virtual thread, suited to subscribers that block.
+         */
+        public Builder virtualThreads() {
+            this.executionMode = ExecutionMode.VIRTUAL_THREADS;
+            return this;
+        }
+
+        /**
+         * Runs subscribers on the given executor. The bus never shuts it down.
+         *
+         * @param executor the executor to deliver on
+         */
+        public Builder executor(Executor executor) {
+            this.executionMode = ExecutionMode.CALLER_EXECUTOR;
+            this.executor = Objects.requireNonNull(executor, "executor cannot be null");
+            return this;
+        }
+
+        /**
+         * Runs subscribers directly on the dispatcher thread. Only suited to cheap, non-blocking
+         * subscribers: a slow one delays every other event, and one that publishes into a full
+         * ring stalls the dispatcher.
+         */
+        public Builder inlineDelivery() {
+            this.executionMode = ExecutionMode.INLINE;
+            return this;
+        }
+
+        public EventBusImpl build() {
+            return new EventBusImpl(this);
         }
     }
 }
@@ -0,0 +1,37 @@
+package Statistics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link EventBusMetrics}. Latencies are in microseconds and keyed by
+ * event class name or subscriber name.
+ */
+public interface EventBusMXBean {
+    int getQueueDepth();
+
+    int getQueueCapacity();
+
+    long getPublishedCount();
+
+    double getPublishRate();
+
+    long getCoalescedCount();
+
+    long getRejectedCount();
+
+    long getDroppedCount();
+
+    long getSpilledCount();
+
+    Map<String, Long> getSubscriberErrorCounts();
+
+    Map<String, Long> getSubscriberDropCounts();
+
+    Map<String, Double> getDispatchLatencyP50Micros();
+
+    Map<String, Double> getDispatchLatencyP99Micros();
+
+    Map<String, Double> getSubscriberLatencyP50Micros();
+
+    Map<String, Double> getSubscriberLatencyP99Micros();
+}
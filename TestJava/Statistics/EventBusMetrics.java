@@ -0,0 +1,77 @@
+package Statistics;
+
+import java.util.Map;
+
+/**
+ * Live view of what an {@link EventBusImpl} is doing.
+ * <p>
+ * Counters are always maintained. Latencies are only recorded while they are being read,
+ * from a call of one of the latency methods until none has been called for a minute, and
+ * cover the last second.
+ */
+public interface EventBusMetrics {
+
+    /**
+     * @return the number of events waiting for the dispatcher
+     */
+    int queueDepth();
+
+    /**
+     * @return the capacity of the event queue
+     */
+    int queueCapacity();
+
+    /**
+     * @return the number of events published since the bus was created
+     */
+    long publishedCount();
+
+    /**
+     * @return events published per second since the previous call, measured over at least one second
+     */
+    double publishRate();
+
+    /**
+     * @return the number of coalescing events not queued because they replaced a pending event or had no subscribers
+     */
+    long coalescedCount();
+
+    /**
+     * @return the number of events the bus refused because the queue was full, the publisher timed out or the bus was shutting down
+     */
+    long rejectedCount();
+
+    /**
+     * @return the number of queued events discarded to make room under {@link OverflowPolicy#DROP_OLDEST}
+     */
+    long droppedCount();
+
+    /**
+     * @return the number of events that went to the overflow tier under {@link OverflowPolicy#SPILL}
+     */
+    long spilledCount();
+
+    /**
+     * @return exceptions thrown per subscriber, keyed by subscriber name
+     */
+    Map<String, Long> subscriberErrorCounts();
+
+    /**
+     * @return events lost to the subscriber's backpressure policy, keyed by subscriber name
+     */
+    Map<String, Long> subscriberDropCounts();
+
+    /**
+     * Time from the dispatcher taking an event off the queue until every subscriber's mailbox has accepted it.
+     *
+     * @return latencies in microseconds per concrete event class
+     */
+    Map<Class<?>, SlidingWindowStatistics.Statistics> dispatchLatencies();
+
+    /**
+     * Time spent in the subscriber per delivery.
+     *
+     * @return latencies in microseconds, keyed by subscriber name
+     */
+    Map<String, SlidingWindowStatistics.Statistics> subscriberLatencies();
+}
@@ -0,0 +1,286 @@
+package Statistics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Metrics of one {@link EventBusImpl}. Publishers and the dispatcher only bump
+ * {@link LongAdder}s; everything else is computed when the metrics are read.
+ */
+class EventBusMetricsImpl implements EventBusMetrics, EventBusMXBean {
+    private static final long RATE_INTERVAL_NANOS = 1_000_000_000L;
+    private static final long LATENCY_IDLE_NANOS = 60_000_000_000L; // Recording stops this long after the last latency read
+
+    private final EventQueue eventQueue;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final ConcurrentHashMap<Class<?>, LatencyRecorder> dispatchLatencies = new ConcurrentHashMap<>();
+    private final List<SubscriberMetrics> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger subscriberIds = new AtomicInteger();
+    private final AtomicReference<RateSample> rateSample = new AtomicReference<>(new RateSample(System.nanoTime(), 0, 0));
+    private volatile boolean latencyEnabled; // Switched on by the first latency read
+    private volatile long lastLatencyRead;   // System.nanoTime() of the latest latency read
+    private volatile ObjectName objectName;
+
+    EventBusMetricsImpl(EventQueue eventQueue) {
+        this.eventQueue = eventQueue;
+    }
+
+    // Recording, called from the publish and dispatch paths
+
+    void recordPublish(PublishResult result) {
+        published.increment();
+        switch (result) {
+            case COALESCED -> coalesced.increment();
+            case SPILLED -> spilled.increment();
+            case REJECTED, TIMED_OUT, CLOSED -> rejected.increment();
+            case ACCEPTED, ACCEPTED_AFTER_DROP -> { // Drops are counted as they happen, see recordDrop
+            }
+        }
+    }
+
+    /**
+     * Counts a queued event that was discarded to make room, once per event.
+     */
+    void recordDrop() {
+        dropped.increment();
+    }
+
+    /**
+     * @return whether a latency method has been called within the last minute; only reads the clock once one has
+     */
+    boolean isLatencyEnabled() {
+        return latencyEnabled && System.nanoTime() - lastLatencyRead < LATENCY_IDLE_NANOS;
+    }
+
+    private void latencyRead() {
+        lastLatencyRead = System.nanoTime();
+        latencyEnabled = true;
+    }
+
+    LatencyRecorder dispatchLatency(Class<?> eventClass) {
+        LatencyRecorder recorder = dispatchLatencies.get(eventClass);
+        return recorder != null ? recorder : dispatchLatencies.computeIfAbsent(eventClass, _ -> new LatencyRecorder(this));
+    }
+
+    SubscriberMetrics newSubscriber(Class<? extends BaseEvent> clazz) {
+        SubscriberMetrics metrics = new SubscriberMetrics(clazz.getSimpleName() + "#" + subscriberIds.incrementAndGet(), new LatencyRecorder(this));
+        subscribers.add(metrics);
+        return metrics;
+    }
+
+    // Pull API
+
+    @Override
+    public int queueDepth() {
+        return eventQueue.size();
+    }
+
+    @Override
+    public int queueCapacity() {
+        return eventQueue.capacity();
+    }
+
+    @Override
+    public long publishedCount() {
+        return published.sum();
+    }
+
+    @Override
+    public double publishRate() {
+        long now = System.nanoTime();
+        long count = published.sum();
+        RateSample sample = rateSample.get();
+        if (now - sample.nanos >= RATE_INTERVAL_NANOS) {
+            RateSample next = new RateSample(now, count, (count - sample.count) * 1e9 / (now - sample.nanos));
+            rateSample.compareAndSet(sample, next); // A concurrent reader may have moved it on already
+            return next.rate;
+        }
+        return sample.rate;
+    }
+
+    @Override
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public long spilledCount() {
+        return spilled.sum();
+    }
+
+    @Override
+    public Map<String, Long> subscriberErrorCounts() {
+        return perSubscriber(metrics -> metrics.errors.sum());
+    }
+
+    @Override
+    public Map<String, Long> subscriberDropCounts() {
+        return perSubscriber(metrics -> metrics.dropped.sum());
+    }
+
+    @Override
+    public Map<Class<?>, SlidingWindowStatistics.Statistics> dispatchLatencies() {
+        latencyRead();
+        Map<Class<?>, SlidingWindowStatistics.Statistics> latencies = new LinkedHashMap<>();
+        dispatchLatencies.forEach((eventClass, recorder) -> latencies.put(eventClass, recorder.snapshot()));
+        return latencies;
+    }
+
+    @Override
+    public Map<String, SlidingWindowStatistics.Statistics> subscriberLatencies() {
+        latencyRead();
+        return perSubscriber(metrics -> metrics.latency.snapshot());
+    }
+
+    private <T> Map<String, T> perSubscriber(Function<SubscriberMetrics, T> metric) {
+        subscribers.removeIf(metrics -> metrics.cancelled);
+        Map<String, T> values = new LinkedHashMap<>();
+        for (SubscriberMetrics metrics : subscribers) {
+            values.put(metrics.name, metric.apply(metrics));
+        }
+        return values;
+    }
+
+    // JMX
+
+    /**
+     * Registers these metrics with the platform MBean server as {@code Statistics:type=EventBus,name=<name>}.
+     */
+    ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("Statistics:type=EventBus,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register event bus MBean " + name, e);
+        }
+    }
+
+    void unregisterMBean() {
+        ObjectName registered = objectName;
+        if (registered == null) {
+            return;
+        }
+        objectName = null;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(registered)) {
+                server.unregisterMBean(registered);
+            }
+        } catch (JMException e) {
+            System.err.println("Error unregistering event bus MBean: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity();
+    }
+
+    @Override
+    public long getPublishedCount() {
+        return publishedCount();
+    }
+
+    @Override
+    public double getPublishRate() {
+        return publishRate();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return coalescedCount();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount();
+    }
+
+    @Override
+    public long getSpilledCount() {
+        return spilledCount();
+    }
+
+    @Override
+    public Map<String, Long> getSubscriberErrorCounts() {
+        return subscriberErrorCounts();
+    }
+
+    @Override
+    public Map<String, Long> getSubscriberDropCounts() {
+        return subscriberDropCounts();
+    }
+
+    @Override
+    public Map<String, Double> getDispatchLatencyP50Micros() {
+        return dispatchPercentile(statistics -> statistics.getPctile(50));
+    }
+
+    @Override
+    public Map<String, Double> getDispatchLatencyP99Micros() {
+        return dispatchPercentile(statistics -> statistics.getPctile(99));
+    }
+
+    @Override
+    public Map<String, Double> getSubscriberLatencyP50Micros() {
+        return subscriberPercentile(statistics -> statistics.getPctile(50));
+    }
+
+    @Override
+    public Map<String, Double> getSubscriberLatencyP99Micros() {
+        return subscriberPercentile(statistics -> statistics.getPctile(99));
+    }
+
+    private Map<String, Double> dispatchPercentile(ToDoubleFunction<SlidingWindowStatistics.Statistics> percentile) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        dispatchLatencies().forEach((eventClass, statistics) -> values.put(eventClass.getName(), percentile.applyAsDouble(statistics)));
+        return values;
+    }
+
+    private Map<String, Double> subscriberPercentile(ToDoubleFunction<SlidingWindowStatistics.Statistics> percentile) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        subscriberLatencies().forEach((name, statistics) -> values.put(name, percentile.applyAsDouble(statistics)));
+        return values;
+    }
+
+    private record RateSample(long nanos, long count, double rate) {
+    }
+}
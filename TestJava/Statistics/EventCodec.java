@@ -0,0 +1,29 @@
+package Statistics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary form of events, used to write them to an {@link EventJournal}.
+ * <p>
+ * Both methods work directly on the journal's mapped memory, so an implementation
+ * should write and read the buffer in place rather than going through byte arrays.
+ */
+public interface EventCodec {
+
+    /**
+     * Writes the event at the buffer's position, advancing it past the written bytes.
+     *
+     * @param event the event to write
+     * @param target the buffer to write into
+     * @throws java.nio.BufferOverflowException if the event does not fit in the remaining bytes
+     */
+    void encode(BaseEvent event, ByteBuffer target);
+
+    /**
+     * Reads an event written by {@link #encode}.
+     *
+     * @param source exactly the bytes of one encoded event, from its position to its limit
+     * @return the event
+     */
+    BaseEvent decode(ByteBuffer source);
+}
@@ -0,0 +1,339 @@
+package Statistics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of events in memory-mapped segment files.
+ * <p>
+ * Every event gets the next sequence number and a timestamp and is copied into the mapped
+ * segment, so an append is a copy into memory that the operating system writes back in the
+ * background. Appenders claim their place in the active segment with a CAS and do not wait
+ * for each other; only rolling over to a new file, named after its first sequence, when a
+ * segment is full takes a lock. Replay decodes directly from the mapped segments and may run
+ * concurrently with appends; it stops at the first record that is still being written.
+ * <p>
+ * Only the active segment stays open and mapped. A full segment is released once its last
+ * record is written, and replay maps it again while it reads it. With a retention bound, the
+ * oldest segments beyond it are deleted as new ones are started, and their events can no
+ * longer be replayed.
+ * <p>
+ * Reopening a directory continues the existing journal after its last complete record.
+ */
+public class EventJournal implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final Path directory;
+    private final EventCodec codec;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final List<JournalSegment> segments = new CopyOnWriteArrayList<>(); // Oldest first
+    private final int maxPayloadSize;
+    private final ThreadLocal<ByteBuffer> scratch = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+    private volatile JournalSegment active; // Written under this
+    private volatile boolean closed;        // Written under this
+
+    /**
+     * Receives replayed events.
+     */
+    @FunctionalInterface
+    public interface ReplayConsumer {
+        void accept(long sequence, long timestampMillis, BaseEvent event);
+    }
+
+    public EventJournal(Path directory, EventCodec codec) throws IOException {
+        this(directory, codec, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the journal in the given directory, creating it if necessary, and keeps every segment.
+     *
+     * @param directory where the segment files live
+     * @param codec turns events into bytes and back
+     * @param segmentSize size of each segment file in bytes; also the limit for a single encoded event
+     */
+    public EventJournal(Path directory, EventCodec codec, int segmentSize) throws IOException {
+        this(directory, codec, segmentSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Opens the journal in the given directory, creating it if necessary.
+     *
+     * @param directory where the segment files live
+     * @param codec turns events into bytes and back
+     * @param segmentSize size of each segment file in bytes; also the limit for a single encoded event
+     * @param maxSegments how many segment files to keep, including the active one; older ones are deleted
+     */
+    public EventJournal(Path directory, EventCodec codec, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= JournalSegment.HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be larger than a record header");
+        }
+        if (maxSegments <= 0) {
+            throw new IllegalArgumentException("maxSegments must be positive");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.codec = Objects.requireNonNull(codec, "codec cannot be null");
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.maxPayloadSize = (segmentSize & -JournalSegment.ALIGNMENT) - JournalSegment.HEADER_SIZE; // Padded, a record fills a segment at most
+
+        List<Path> existing;
+        try (Stream<Path> files = Files.list(directory)) {
+            existing = files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path path : existing) {
+            String name = path.getFileName().toString();
+            segments.add(JournalSegment.open(path, Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), segmentSize));
+        }
+        if (segments.isEmpty()) {
+            segments.add(JournalSegment.open(segmentPath(0), 0, segmentSize));
+        }
+        this.active = segments.getLast();
+        for (JournalSegment segment : segments) {
+            if (segment != active) {
+                segment.release(); // Complete from the previous run
+            }
+        }
+        trim();
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Appends an event.
+     *
+     * @return the sequence number of the event
+     * @throws IllegalArgumentException if the encoded event is larger than a segment
+     * @throws IllegalStateException if the journal is closed
+     * @throws UncheckedIOException if a new segment file cannot be created
+     */
+    public long append(BaseEvent event) {
+        long sequence = tryAppend(event);
+        if (sequence < 0) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        return sequence;
+    }
+
+    /**
+     * Appends an event unless the journal is closed. An append that claimed its place before
+     * {@link #close()} is always completed before the segments are closed.
+     *
+     * @return the sequence number of the event, or -1 if the journal is closed
+     * @throws IllegalArgumentException if the encoded event is larger than a segment
+     * @throws UncheckedIOException if a new segment file cannot be created
+     */
+    public long tryAppend(BaseEvent event) {
+        ByteBuffer payload = encode(event);
+        int length = JournalSegment.HEADER_SIZE + payload.remaining();
+        long timestamp = System.currentTimeMillis();
+        JournalSegment segment = active;
+        while (true) {
+            long claimed = segment.claim(length);
+            if (claimed >= 0) {
+                segment.write(claimed, timestamp, payload);
+                return segment.sequenceOf(claimed);
+            }
+            segment = next(segment);
+            if (segment == null) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Encodes into a buffer of the calling thread, growing it up to the largest payload a segment holds.
+     *
+     * @return the encoded event, from its position to its limit
+     */
+    private ByteBuffer encode(BaseEvent event) {
+        ByteBuffer target = scratch.get();
+        while (true) {
+            try {
+                codec.encode(event, target.clear());
+                return target.flip();
+            } catch (BufferOverflowException e) {
+                if (target.capacity() >= maxPayloadSize) {
+                    throw new IllegalArgumentException("Event does not fit in a journal segment of " + segmentSize + " bytes");
+                }
+                target = ByteBuffer.allocate((int) Math.min(2L * target.capacity(), maxPayloadSize));
+                scratch.set(target);
+            }
+        }
+    }
+
+    /**
+     * Seals a segment that has no room left and rolls over to a new one, unless another
+     * appender already has.
+     *
+     * @return the segment to append to, or null if the journal is closed
+     */
+    private synchronized JournalSegment next(JournalSegment full) {
+        if (closed) {
+            return null;
+        }
+        if (active == full) {
+            roll(full.sequenceOf(full.seal()));
+            full.awaitWritten(); // Appenders that claimed their place before the seal
+            try {
+                full.release();
+            } catch (IOException e) {
+                System.err.println("Error releasing journal segment " + full.path + ": " + e.getMessage());
+            }
+            trim();
+        }
+        return active;
+    }
+
+    /**
+     * Deletes the oldest segments beyond the retention bound; they are all released.
+     */
+    private void trim() {
+        while (segments.size() > maxSegments) {
+            JournalSegment oldest = segments.removeFirst(); // Replays that start later no longer see it
+            try {
+                oldest.delete();
+            } catch (IOException e) {
+                System.err.println("Error deleting journal segment " + oldest.path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void roll(long firstSequence) {
+        JournalSegment next;
+        try {
+            next = JournalSegment.open(segmentPath(firstSequence), firstSequence, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create journal segment", e);
+        }
+        segments.add(next); // Before appenders can write to it, so replay finds their records
+        active = next;
+    }
+
+    /**
+     * @return the sequence of the oldest event that can still be replayed, or of the next event
+     *         if there is none
+     */
+    public long firstSequence() {
+        return segments.getFirst().firstSequence;
+    }
+
+    /**
+     * @return the sequence of the last appended event, or -1 if the journal is empty
+     */
+    public long lastSequence() {
+        return active.lastSequence();
+    }
+
+    /**
+     * Replays the events from the given sequence number on, in sequence order.
+     *
+     * @param fromSequence the first sequence to replay; earlier events are skipped, as are
+     *        events already deleted, see {@link #firstSequence()}
+     * @param consumer receives each event
+     * @return the number of events replayed
+     * @throws UncheckedIOException if a released segment cannot be mapped for reading
+     */
+    public long replay(long fromSequence, ReplayConsumer consumer) {
+        List<JournalSegment> snapshot = List.copyOf(segments);
+        int first = 0;
+        for (int i = 1; i < snapshot.size() && snapshot.get(i).firstSequence <= fromSequence; i++) {
+            first = i; // Last segment starting at or before the sequence
+        }
+        return replay(snapshot.subList(first, snapshot.size()), fromSequence, Long.MIN_VALUE, consumer);
+    }
+
+    /**
+     * Replays the events appended at or after the given time, in sequence order.
+     *
+     * @param fromTimestampMillis the earliest append time to replay, in milliseconds since the epoch
+     * @param consumer receives each event
+     * @return the number of events replayed
+     * @throws UncheckedIOException if a released segment cannot be mapped for reading
+     */
+    public long replaySince(long fromTimestampMillis, ReplayConsumer consumer) {
+        List<JournalSegment> snapshot = List.copyOf(segments);
+        int first = 0;
+        while (first < snapshot.size() - 1 && snapshot.get(first).maxTimestamp() < fromTimestampMillis) {
+            first++; // Every record of the segment is older
+        }
+        return replay(snapshot.subList(first, snapshot.size()), Long.MIN_VALUE, fromTimestampMillis, consumer);
+    }
+
+    private long replay(List<JournalSegment> from, long fromSequence, long fromTimestamp, ReplayConsumer consumer) {
+        long replayed = 0;
+        for (JournalSegment segment : from) {
+            ByteBuffer buffer;
+            try {
+                buffer = segment.reader();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map journal segment " + segment.path, e);
+            }
+            if (buffer == null) {
+                continue; // Deleted since the snapshot was taken
+            }
+            int end = segment.end();
+            int position = 0;
+            while (position < end) {
+                int length = JournalSegment.lengthAt(buffer, position);
+                if (length == 0) {
+                    return replayed; // Still being written; later records wait for it to keep sequence order
+                }
+                long sequence = buffer.getLong(position + JournalSegment.SEQUENCE_OFFSET);
+                long timestamp = buffer.getLong(position + JournalSegment.TIMESTAMP_OFFSET);
+                if (sequence >= fromSequence && timestamp >= fromTimestamp) {
+                    buffer.limit(position + length).position(position + JournalSegment.HEADER_SIZE);
+                    consumer.accept(sequence, timestamp, codec.decode(buffer));
+                    buffer.limit(buffer.capacity());
+                    replayed++;
+                }
+                position += JournalSegment.aligned(length);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Asks the operating system to write the mapped segments to disk.
+     */
+    public synchronized void flush() {
+        active.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        active.seal(); // Appenders that have not claimed their place yet find the journal closed
+        for (JournalSegment segment : segments) {
+            segment.awaitWritten(); // Those that have finish before the mapping goes away
+        }
+        List<IOException> failures = new ArrayList<>();
+        for (JournalSegment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                failures.add(e);
+            }
+        }
+        if (!failures.isEmpty()) {
+            IOException failure = failures.getFirst();
+            failures.subList(1, failures.size()).forEach(failure::addSuppressed);
+            throw failure;
+        }
+    }
+}
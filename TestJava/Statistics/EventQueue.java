@@ -0,0 +1,88 @@
+package Statistics;
+
+/**
+ * Bounded hand-off between publishers and the dispatcher thread of {@link EventBusImpl}.
+ * <p>
+ * Any thread may remove events with {@link #poll()}, which is how publishers drop the
+ * oldest event under {@link OverflowPolicy#DROP_OLDEST}; only the dispatcher waits, in
+ * {@link #awaitEvent()}, which leaves the event on the queue so that the dispatcher can
+ * mark itself busy before taking it.
+ */
+interface EventQueue {
+
+    /**
+     * Enqueues an event if there is room, without waiting.
+     *
+     * @param event the event to enqueue
+     * @return true if the event was accepted
+     */
+    boolean tryOffer(BaseEvent event);
+
+    /**
+     * Enqueues an event, waiting for room if necessary.
+     *
+     * @param event the event to enqueue
+     * @param timeoutNanos how long to wait for room, or {@link Long#MAX_VALUE} to wait indefinitely
+     * @return true if the event was accepted, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean offer(BaseEvent event, long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Enqueues as many of the first {@code count} events of the array as fit, in order, without waiting.
+     *
+     * @param events the events to enqueue
+     * @param count the number of events to take from the array
+     * @return the number of leading events accepted
+     */
+    default int tryOfferAll(BaseEvent[] events, int count) {
+        int accepted = 0;
+        while (accepted < count && tryOffer(events[accepted])) {
+            accepted++;
+        }
+        return accepted;
+    }
+
+    /**
+     * Waits until an event is available, without removing it. Another reader may still
+     * remove it first.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void awaitEvent() throws InterruptedException;
+
+    /**
+     * Removes the next event if one is available.
+     *
+     * @return the next event, or null if the queue is empty
+     */
+    BaseEvent poll();
+
+    /**
+     * Removes as many events as are available, without waiting.
+     *
+     * @param batch the array to fill
+     * @return the number of events written to the array, 0 if the queue is empty
+     */
+    default int drainTo(BaseEvent[] batch) {
+        int count = 0;
+        while (count < batch.length) {
+            BaseEvent event = poll();
+            if (event == null) {
+                break;
+            }
+            batch[count++] = event;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of events waiting to be dispatched
+     */
+    int size();
+
+    /**
+     * @return the maximum number of events the queue holds
+     */
+    int capacity();
+}
@@ -0,0 +1,240 @@
+package Statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multi-producer event ring in the style of the LMAX Disruptor.
+ * <p>
+ * Slots are allocated once up front and reused. A publisher claims a sequence by
+ * advancing the claim cursor with a CAS, but only once the previous lap of that slot
+ * has been released, then writes the event into the slot and publishes the sequence
+ * for that slot. The dispatcher reads slots strictly in sequence order and releases
+ * them by advancing the consumer cursor with a CAS, which lets a publisher release
+ * the oldest slot as well to make room. The reader that released a sequence then clears
+ * its slot and marks it freed; a publisher writes a slot only once the previous lap is
+ * freed, so a clear can never wipe an event published into the slot since, even the
+ * same instance published again. Neither side allocates or takes a lock.
+ */
+class EventRingBuffer implements EventQueue {
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final AtomicReferenceArray<BaseEvent> entries; // Pre-allocated slots
+    private final AtomicLongArray published;      // Sequence currently published in each slot
+    private final AtomicLongArray freed;          // Last sequence whose event was cleared from each slot
+    private final int mask;
+    private final int capacity;
+    private final AtomicLong claimSequence = new AtomicLong(0);  // Next sequence handed to a publisher
+    private final AtomicLong consumerSequence = new AtomicLong(-1); // Last sequence released by a reader
+    private volatile Thread waitingConsumer;      // Set while the dispatcher is parked
+
+    EventRingBuffer(int requestedCapacity) {
+        if (requestedCapacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = nextPowerOfTwo(requestedCapacity);
+        this.mask = capacity - 1;
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.published = new AtomicLongArray(capacity);
+        this.freed = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+            freed.set(i, i - capacity); // As if a lap before the first had been read
+        }
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return value == 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    @Override
+    public boolean tryOffer(BaseEvent event) {
+        while (true) {
+            long sequence = claimSequence.get();
+            if (!hasRoom(sequence, 1)) {
+                return false;
+            }
+            if (claimSequence.compareAndSet(sequence, sequence + 1)) {
+                publish(sequence, event);
+                signalConsumer();
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(BaseEvent event, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        int tries = 0;
+        while (!tryOffer(event)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (timeoutNanos != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            tries = backOff(tries);
+        }
+        return true;
+    }
+
+    /**
+     * Claims as much of the range as currently fits with a single CAS, so a burst
+     * pays for one claim instead of one per event.
+     */
+    @Override
+    public int tryOfferAll(BaseEvent[] events, int count) {
+        int accepted = 0;
+        while (accepted < count) {
+            long first = claimSequence.get();
+            long available = consumerSequence.get() + 1 + capacity - first;
+            if (available <= 0) {
+                break;
+            }
+            int claimed = (int) Math.min(available, count - accepted);
+            if (claimSequence.compareAndSet(first, first + claimed)) {
+                for (int i = 0; i < claimed; i++) {
+                    publish(first + i, events[accepted + i]);
+                }
+                accepted += claimed;
+            }
+        }
+        if (accepted > 0) {
+            signalConsumer();
+        }
+        return accepted;
+    }
+
+    private boolean hasRoom(long sequence, int count) {
+        // The last sequence of the claim may reuse a slot only once the previous lap released it
+        return sequence + count - 1 - capacity <= consumerSequence.get();
+    }
+
+    private void publish(long sequence, BaseEvent event) {
+        int index = (int) (sequence & mask);
+        while (freed.get(index) != sequence - capacity) {
+            Thread.onSpinWait(); // The reader of the previous lap has released it but not cleared it yet
+        }
+        entries.set(index, event);
+        published.set(index, sequence); // Publish: makes the slot visible to the dispatcher
+    }
+
+    private void signalConsumer() {
+        Thread waiter = waitingConsumer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    @Override
+    public void awaitEvent() throws InterruptedException {
+        int tries = 0;
+        while (!isNextPublished()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (tries < SPIN_TRIES + YIELD_TRIES) {
+                tries = backOff(tries);
+            } else {
+                waitingConsumer = Thread.currentThread();
+                if (!isNextPublished()) { // Re-check after announcing ourselves
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                waitingConsumer = null;
+            }
+        }
+    }
+
+    private boolean isNextPublished() {
+        long next = consumerSequence.get() + 1;
+        return published.get((int) (next & mask)) == next;
+    }
+
+    @Override
+    public BaseEvent poll() {
+        while (true) {
+            long current = consumerSequence.get();
+            long next = current + 1;
+            int index = (int) (next & mask);
+            if (published.get(index) != next) {
+                return null;
+            }
+            BaseEvent event = entries.get(index);
+            if (consumerSequence.compareAndSet(current, next)) {
+                free(next);
+                return event;
+            }
+            // Another reader released this slot first; try the next one
+        }
+    }
+
+    /**
+     * Clears the slot of a sequence this reader has released, then lets publishers reuse it.
+     */
+    private void free(long sequence) {
+        int index = (int) (sequence & mask);
+        entries.set(index, null);
+        freed.set(index, sequence);
+    }
+
+    /**
+     * Reads every slot already published in sequence and releases them all with a single CAS.
+     */
+    @Override
+    public int drainTo(BaseEvent[] batch) {
+        int count = 0;
+        while (count < batch.length) {
+            long current = consumerSequence.get();
+            int read = 0;
+            while (count + read < batch.length) {
+                long next = current + 1 + read;
+                int index = (int) (next & mask);
+                if (published.get(index) != next) {
+                    break;
+                }
+                batch[count + read] = entries.get(index);
+                read++;
+            }
+            if (read == 0) {
+                break;
+            }
+            if (consumerSequence.compareAndSet(current, current + read)) {
+                for (int i = 0; i < read; i++) {
+                    free(current + 1 + i);
+                }
+                count += read;
+            }
+            // Otherwise a publisher dropped the oldest slot underneath us; re-read from the new position
+        }
+        for (int i = count; i < batch.length && batch[i] != null; i++) {
+            batch[i] = null; // Forget reads discarded by a failed release
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        long size = claimSequence.get() - (consumerSequence.get() + 1);
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    private static int backOff(int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return tries < SPIN_TRIES + YIELD_TRIES ? tries + 1 : tries;
+    }
+}
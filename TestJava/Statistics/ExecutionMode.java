@@ -0,0 +1,8 @@
+package Statistics;
+
+enum ExecutionMode {
+    THREAD_POOL,     // Subscribers run on a fixed pool of platform threads owned by the bus
+    VIRTUAL_THREADS, // Every mailbox drain runs on a fresh virtual thread
+    CALLER_EXECUTOR, // Subscribers run on an Executor supplied by the caller, which the bus does not shut down
+    INLINE           // Subscribers run directly on the dispatcher thread
+}
@@ -0,0 +1,376 @@
+package Statistics;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Bounded, lock-free ring of {@code (int value, long timestamp)} pairs for any number of
+ * producers and consumers.
+ * <p>
+ * Works like {@link LockFreeRingBuffer}, with the same per-slot sequences, but keeps the
+ * pairs in primitive arrays laid out in a single buffer outside the Java heap: adding a
+ * value allocates nothing, and a window of millions of samples is invisible to the
+ * garbage collector. The buffer starts with a header holding the capacity and the head
+ * and tail positions, each on its own cache line, followed by the slot sequences, the
+ * timestamps and the values.
+ * <p>
+ * A ring opened with {@link #openMapped} lives in a memory-mapped file instead, so its
+ * contents survive a restart of the process. Appending stays a few plain stores into the
+ * mapping.
+ */
+public class IntLongRingBuffer implements AutoCloseable {
+    /**
+     * Receives the pairs visited by {@link #forEach}.
+     */
+    @FunctionalInterface
+    public interface IntLongConsumer {
+        void accept(int value, long timestamp);
+    }
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int MAGIC = 0x494C5242; // "ILRB"
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int HEAD_OFFSET = 64;  // Next position to claim
+    private static final int TAIL_OFFSET = 128; // Oldest position not yet consumed
+    private static final int DATA_OFFSET = 192;
+    private static final int CACHE_LINE = 64;
+
+    private final ByteBuffer buffer;
+    private final FileChannel channel; // Null unless the ring is mapped from a file
+    private final FileLock lock;
+    private final int capacity;
+    private final int mask;
+    private final int timestampsOffset;
+    private final int valuesOffset;
+
+    public IntLongRingBuffer(int capacity) {
+        // Whole cache lines plus one, since the aligned slice may lose up to a line at either end
+        this(ByteBuffer.allocateDirect((sizeFor(capacity) + 2 * CACHE_LINE - 1) & -CACHE_LINE).alignedSlice(CACHE_LINE), null, null, capacity);
+        reset();
+    }
+
+    private IntLongRingBuffer(ByteBuffer buffer, FileChannel channel, FileLock lock, int capacity) {
+        int slots = slotsFor(capacity);
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        this.channel = channel;
+        this.lock = lock;
+        this.capacity = capacity;
+        this.mask = slots - 1;
+        this.timestampsOffset = DATA_OFFSET + slots * Long.BYTES;
+        this.valuesOffset = timestampsOffset + slots * Long.BYTES;
+    }
+
+    private static int slotsFor(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 26) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^26");
+        }
+        int slots = Integer.highestOneBit(capacity);
+        return slots == capacity ? capacity : slots << 1; // Round up to a power of two
+    }
+
+    private static int sizeFor(int capacity) {
+        return DATA_OFFSET + slotsFor(capacity) * (Long.BYTES + Long.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Opens a ring kept in a memory-mapped file, creating the file if needed. The pairs a previous
+     * process left in the file are kept, oldest first, except those older than the given timestamp;
+     * if there are more than {@code capacity} of them, the newest are kept. Only one ring at a time
+     * may have the file open.
+     *
+     * @param file the ring file
+     * @param capacity the maximum number of pairs held
+     * @param discardBefore pairs with an earlier timestamp are dropped, e.g. those that have left the window
+     * @throws IllegalStateException if the file is already open
+     */
+    public static IntLongRingBuffer openMapped(Path file, int capacity, long discardBefore) throws IOException {
+        int size = sizeFor(capacity);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock(0, DATA_OFFSET, false);
+            } catch (OverlappingFileLockException e) {
+                lock = null; // Already held by this JVM
+            }
+            if (lock == null) {
+                throw new IllegalStateException(file + " is already open");
+            }
+            IntLongRingBuffer previous = attach(channel, discardBefore);
+            int retained = previous != null ? previous.size() : 0;
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+            IntLongRingBuffer ring = new IntLongRingBuffer(mapped, channel, lock, capacity);
+            if (previous == null) {
+                ring.reset();
+            } else {
+                // Copy the surviving pairs aside, then rebuild the ring from scratch. This also
+                // settles slots that a crashed producer claimed but never published.
+                int[] values = new int[retained];
+                long[] timestamps = new long[retained];
+                int[] count = new int[1];
+                previous.forEach((value, timestamp) -> {
+                    if (count[0] < retained) {
+                        values[count[0]] = value;
+                        timestamps[count[0]++] = timestamp;
+                    }
+                });
+                ring.reset();
+                for (int i = Math.max(0, count[0] - capacity); i < count[0]; i++) {
+                    ring.add(values[i], timestamps[i]);
+                }
+            }
+            return ring;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a view of the ring a previous process left in the file, with old pairs already
+     *         dropped, or null if the file does not hold a ring
+     */
+    private static IntLongRingBuffer attach(FileChannel channel, long discardBefore) throws IOException {
+        if (channel.size() < DATA_OFFSET) {
+            return null;
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, DATA_OFFSET).order(ByteOrder.nativeOrder());
+        int previousCapacity = header.getInt(CAPACITY_OFFSET);
+        if (header.getInt(MAGIC_OFFSET) != MAGIC || previousCapacity <= 0 || previousCapacity > 1 << 26
+                || channel.size() < sizeFor(previousCapacity)) {
+            return null;
+        }
+        // A private copy-on-write mapping, so dropping old pairs does not touch the file yet
+        MappedByteBuffer contents = channel.map(FileChannel.MapMode.PRIVATE, 0, sizeFor(previousCapacity));
+        IntLongRingBuffer previous = new IntLongRingBuffer(contents, null, null, previousCapacity);
+        long head = (long) LONGS.getVolatile(contents, HEAD_OFFSET);
+        long tail = (long) LONGS.getVolatile(contents, TAIL_OFFSET);
+        if (head < tail || head - tail > previousCapacity) {
+            return null; // Not a consistent ring
+        }
+        previous.advanceTailOlderThan(discardBefore);
+        return previous;
+    }
+
+    /**
+     * Empties the ring and marks every slot free for its first lap.
+     */
+    private void reset() {
+        LONGS.setVolatile(buffer, HEAD_OFFSET, 0L);
+        LONGS.setVolatile(buffer, TAIL_OFFSET, 0L);
+        for (int i = 0; i <= mask; i++) {
+            LONGS.setVolatile(buffer, sequenceOffset(i), (long) i);
+        }
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+    }
+
+    private static int sequenceOffset(int index) {
+        return DATA_OFFSET + index * Long.BYTES;
+    }
+
+    private long sequence(int index) {
+        return (long) LONGS.getVolatile(buffer, sequenceOffset(index));
+    }
+
+    private void setSequence(int index, long sequence) {
+        LONGS.setVolatile(buffer, sequenceOffset(index), sequence);
+    }
+
+    private long head() {
+        return (long) LONGS.getVolatile(buffer, HEAD_OFFSET);
+    }
+
+    private long tail() {
+        return (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+    }
+
+    private long timestamp(int index) {
+        return buffer.getLong(timestampsOffset + index * Long.BYTES);
+    }
+
+    private int value(int index) {
+        return buffer.getInt(valuesOffset + index * Integer.BYTES);
+    }
+
+    /**
+     * Appends a pair.
+     *
+     * @return false if the buffer already holds {@code capacity} pairs
+     */
+    public boolean add(int value, long timestamp) {
+        long position = head();
+        while (true) {
+            if (position - tail() >= capacity) {
+                return false; // Buffer is full
+            }
+            int index = (int) position & mask;
+            long sequence = sequence(index);
+            if (sequence == position) {
+                if (LONGS.compareAndSet(buffer, HEAD_OFFSET, position, position + 1)) {
+                    buffer.putInt(valuesOffset + index * Integer.BYTES, value);
+                    buffer.putLong(timestampsOffset + index * Long.BYTES, timestamp);
+                    setSequence(index, position + 1); // Publish both fields
+                    return true;
+                }
+                position = head(); // Another producer claimed it first
+            } else if (sequence < position) {
+                return false; // The pair from the previous lap has not been consumed yet
+            } else {
+                position = head();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest pair.
+     *
+     * @return false if there was no published pair to remove
+     */
+    public boolean advanceTail() {
+        return takeFromTail(1, Long.MAX_VALUE, null) == 1;
+    }
+
+    /**
+     * Removes every pair, from the oldest on, whose timestamp is before the cut-off. The pairs are
+     * examined first and then removed together with a single CAS on the tail, which fails if any
+     * other consumer moved the tail meanwhile, so only the pairs examined are removed.
+     *
+     * @return the number of pairs removed
+     */
+    public int advanceTailOlderThan(long cutoffTimestamp) {
+        return takeFromTail(Integer.MAX_VALUE, cutoffTimestamp, null);
+    }
+
+    /**
+     * Like {@link #advanceTailOlderThan(long)}, and hands each removed pair, oldest first, to
+     * {@code evicted} before its slot is freed.
+     *
+     * @return the number of pairs removed
+     */
+    public int advanceTailOlderThan(long cutoffTimestamp, IntLongConsumer evicted) {
+        return takeFromTail(Integer.MAX_VALUE, cutoffTimestamp, Objects.requireNonNull(evicted, "evicted cannot be null"));
+    }
+
+    private int takeFromTail(int max, long cutoffTimestamp, IntLongConsumer evicted) {
+        while (true) {
+            long position = tail();
+            int count = 0;
+            while (count < max) {
+                int index = (int) (position + count) & mask;
+                if (sequence(index) != position + count + 1 || timestamp(index) >= cutoffTimestamp) {
+                    break; // Not published, or still inside the window
+                }
+                count++;
+            }
+            if (count == 0) {
+                return 0;
+            }
+            // The CAS fails if another consumer took any of these pairs, and a slot cannot be
+            // rewritten before the tail has passed it, so the timestamps read above were current.
+            if (LONGS.compareAndSet(buffer, TAIL_OFFSET, position, position + count)) {
+                for (int i = 0; i < count; i++) {
+                    int index = (int) (position + i) & mask;
+                    if (evicted != null) {
+                        evicted.accept(value(index), timestamp(index)); // Still ours until the slot is freed
+                    }
+                    setSequence(index, position + i + mask + 1); // Free the slot for the next lap
+                }
+                return count;
+            }
+        }
+    }
+
+    /**
+     * @return the number of pairs held, including any that producers have claimed but not yet published
+     */
+    public int size() {
+        long currentTail = tail();
+        long held = head() - currentTail;
+        return (int) Math.max(0, Math.min(held, capacity));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return true if the ring lives in a file opened with {@link #openMapped}
+     */
+    public boolean isMapped() {
+        return channel != null;
+    }
+
+    /**
+     * @return the position of the oldest pair held; positions number every pair ever added, from 0
+     */
+    public long tailPosition() {
+        return tail();
+    }
+
+    /**
+     * Visits the pairs from the oldest to the newest published when the visit starts. Pairs consumed
+     * meanwhile are skipped, and the visit stops at a pair that has been claimed but not yet published.
+     */
+    public void forEach(IntLongConsumer consumer) {
+        visit(tail(), head(), consumer);
+    }
+
+    /**
+     * Visits the pairs from the given position on, or from the oldest if that has already been consumed,
+     * up to the newest published when the visit starts. Lets a caller pick up where its last visit ended.
+     *
+     * @return the position after the last pair visited, to pass to the next call
+     */
+    public long forEachFrom(long position, IntLongConsumer consumer) {
+        return visit(Math.max(position, tail()), head(), consumer);
+    }
+
+    private long visit(long position, long endPosition, IntLongConsumer consumer) {
+        while (position < endPosition) {
+            int index = (int) position & mask;
+            long sequence = sequence(index);
+            if (sequence == position + 1) {
+                int value = value(index);
+                long timestamp = timestamp(index);
+                VarHandle.loadLoadFence(); // Check the sequence after reading the pair
+                boolean stillHeld = sequence(index) == position + 1;
+                position++;
+                if (stillHeld) {
+                    consumer.accept(value, timestamp);
+                }
+            } else if (sequence > position + 1) {
+                position = Math.max(position + 1, tail()); // Consumed, skip to the oldest remaining pair
+            } else {
+                break; // Not yet published
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Writes a mapped ring back to its file and releases it. Does nothing for a ring in memory or one already closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            return;
+        }
+        ((MappedByteBuffer) buffer).force();
+        lock.release();
+        channel.close();
+    }
+}
@@ -0,0 +1,246 @@
+package Statistics;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One fixed-size, memory-mapped file of an {@link EventJournal}.
+ * <p>
+ * Records are laid out as {@code [int length][long sequence][long timestamp][payload]}, padded
+ * to 8 bytes, where the length covers the header and the payload. A zero length marks a record
+ * that is still being written, or the end of the written data, which is how a reopened segment
+ * finds where appending left off.
+ * <p>
+ * Appenders reserve room with a CAS on a single claim word holding the number of records, the
+ * end of the claimed bytes and a sealed flag, then write their record without further
+ * coordination and publish its length last with a release store.
+ * <p>
+ * Once a segment has been rolled over and its last record written, it is released: its file is
+ * closed and its mapping dropped, and replay maps the file again for as long as it reads it.
+ */
+class JournalSegment {
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Long.BYTES;
+    static final int SEQUENCE_OFFSET = Integer.BYTES;
+    static final int TIMESTAMP_OFFSET = Integer.BYTES + Long.BYTES;
+    static final int ALIGNMENT = Long.BYTES; // Keeps every length aligned for release and acquire access
+    private static final long SEALED = Long.MIN_VALUE;
+    private static final long ONE_RECORD = 1L << 32;
+
+    final Path path;
+    final long firstSequence;
+    private final int capacity;
+    private volatile MappedByteBuffer buffer; // Null once released
+    private FileChannel channel;              // Null once released; written under this
+    private volatile boolean deleted;
+    private final AtomicLong claim = new AtomicLong(); // Sealed bit, record count in bits 32-62, claimed bytes in bits 0-31
+    private final AtomicLong maxTimestamp = new AtomicLong(Long.MIN_VALUE);
+
+    private JournalSegment(Path path, long firstSequence, FileChannel channel, MappedByteBuffer buffer) {
+        this.path = path;
+        this.firstSequence = firstSequence;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+    }
+
+    /**
+     * Maps a new segment file, or an existing one after finding the end of its records.
+     */
+    static JournalSegment open(Path path, long firstSequence, int size) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int mappedSize = (int) Math.max(size, channel.size());
+        JournalSegment segment = new JournalSegment(path, firstSequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize));
+        segment.recover();
+        return segment;
+    }
+
+    private void recover() {
+        int position = 0;
+        long count = 0;
+        while (position + HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(position);
+            if (length < HEADER_SIZE || position + length > capacity) {
+                break; // End of the written data, or a record torn by a crash
+            }
+            maxTimestamp.accumulateAndGet(buffer.getLong(position + TIMESTAMP_OFFSET), Math::max);
+            count++;
+            position = (int) Math.min(position + (long) aligned(length), capacity);
+        }
+        claim.set(count * ONE_RECORD + position);
+    }
+
+    static int aligned(int length) {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Reserves room for a record of the given length.
+     *
+     * @return the claim word before the record was added, from which {@link #sequenceOf} and
+     *         {@link #positionOf} give its sequence and position; -1 if the segment is sealed or full
+     */
+    long claim(int length) {
+        long size = aligned(length);
+        while (true) {
+            long current = claim.get();
+            if (current < 0 || positionOf(current) + size > capacity) {
+                return -1;
+            }
+            if (claim.compareAndSet(current, current + ONE_RECORD + size)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Stops further claims, so the sequence after the last claimed record is final.
+     *
+     * @return the claim word at the time of sealing
+     */
+    long seal() {
+        return claim.updateAndGet(word -> word | SEALED);
+    }
+
+    long sequenceOf(long claimed) {
+        return firstSequence + ((claimed & ~SEALED) >>> 32);
+    }
+
+    static int positionOf(long claimed) {
+        return (int) claimed & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Writes a record into the room returned by {@link #claim}.
+     *
+     * @param payload the encoded event, from its position to its limit
+     */
+    void write(long claimed, long timestamp, ByteBuffer payload) {
+        MappedByteBuffer mapped = buffer; // Only released once every claimed record is written
+        int start = positionOf(claimed);
+        mapped.putLong(start + SEQUENCE_OFFSET, sequenceOf(claimed));
+        mapped.putLong(start + TIMESTAMP_OFFSET, timestamp);
+        mapped.put(start + HEADER_SIZE, payload, payload.position(), payload.remaining());
+        if (timestamp > maxTimestamp.get()) {
+            maxTimestamp.accumulateAndGet(timestamp, Math::max);
+        }
+        INTS.setRelease(mapped, start, HEADER_SIZE + payload.remaining()); // Written last: a non-zero length marks a complete record
+    }
+
+    /**
+     * @param records the buffer returned by {@link #reader()}
+     * @return the length of the record at the position, or 0 if it is still being written
+     */
+    static int lengthAt(ByteBuffer records, int position) {
+        return (int) INTS.getAcquire(records, position);
+    }
+
+    /**
+     * @return a buffer of its own over the records, mapping the file again if the segment has
+     *         been released; null if the segment has been deleted
+     * @throws IOException if a released segment cannot be mapped
+     */
+    ByteBuffer reader() throws IOException {
+        MappedByteBuffer mapped = buffer;
+        if (mapped != null) {
+            return mapped.duplicate(); // Own position and limit, same memory
+        }
+        if (deleted) {
+            return null;
+        }
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            return file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()); // Stays valid after the file is closed
+        } catch (NoSuchFileException e) {
+            return null; // Deleted since the check
+        }
+    }
+
+    /**
+     * @return the end of the claimed records, some of which may still be being written
+     */
+    int end() {
+        return positionOf(claim.get());
+    }
+
+    /**
+     * @return the sequence of the last claimed record, or firstSequence - 1 if empty
+     */
+    long lastSequence() {
+        return sequenceOf(claim.get()) - 1;
+    }
+
+    /**
+     * @return the latest timestamp of any record, or Long.MIN_VALUE if empty
+     */
+    long maxTimestamp() {
+        return maxTimestamp.get();
+    }
+
+    boolean isEmpty() {
+        return end() == 0;
+    }
+
+    /**
+     * Waits until every claimed record has been written.
+     */
+    void awaitWritten() {
+        MappedByteBuffer mapped = buffer;
+        if (mapped == null) {
+            return; // Released segments are complete
+        }
+        int end = end();
+        int position = 0;
+        while (position < end) {
+            int length;
+            while ((length = lengthAt(mapped, position)) == 0) {
+                Thread.onSpinWait();
+            }
+            position += aligned(length);
+        }
+    }
+
+    void force() {
+        MappedByteBuffer mapped = buffer;
+        if (mapped != null) {
+            mapped.force();
+        }
+    }
+
+    /**
+     * Writes a segment whose records are all written back to disk, closes its file and drops
+     * the mapping, which goes away once no replay uses it any more.
+     */
+    synchronized void release() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        buffer.force();
+        buffer = null;
+        channel.close();
+        channel = null;
+    }
+
+    /**
+     * Releases the segment and deletes its file. Replays that already mapped it finish reading
+     * their mapping; later ones skip the segment.
+     */
+    void delete() throws IOException {
+        deleted = true;
+        release();
+        Files.deleteIfExists(path);
+    }
+
+    void close() throws IOException {
+        release();
+    }
+}
@@ -0,0 +1,151 @@
+package Statistics;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Event bus that writes every published event to an {@link EventJournal} before handing it
+ * to another bus for dispatch, so that subscribers which join late or restart can replay
+ * what they missed.
+ * <p>
+ * Every publish is journaled, including events the underlying bus then refuses or conflates.
+ * Events published concurrently may be journaled in a different order than they are
+ * dispatched; events from one publisher are journaled in publish order.
+ */
+public class JournaledEventBus implements EventBus {
+    private final EventBus delegate;
+    private final EventJournal journal;
+    private volatile boolean closed; // Set once shutdown has started; the journal itself rejects appends racing with it
+
+    /**
+     * @param delegate dispatches the events to subscribers
+     * @param journal where events are written before dispatch; closed when this bus shuts down
+     */
+    public JournaledEventBus(EventBus delegate, EventJournal journal) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate cannot be null");
+        this.journal = Objects.requireNonNull(journal, "journal cannot be null");
+    }
+
+    public EventJournal journal() {
+        return journal;
+    }
+
+    /**
+     * Replays journaled events from the given sequence number on, on the calling thread.
+     *
+     * @param fromSequence the first sequence to replay, e.g. one past the last sequence a subscriber processed
+     * @param consumer receives each event with its sequence and timestamp
+     * @return the number of events replayed
+     */
+    public long replay(long fromSequence, EventJournal.ReplayConsumer consumer) {
+        return journal.replay(fromSequence, consumer);
+    }
+
+    /**
+     * Replays the events journaled at or after the given time, on the calling thread.
+     *
+     * @param from the earliest time to replay
+     * @param consumer receives each event with its sequence and timestamp
+     * @return the number of events replayed
+     */
+    public long replaySince(Instant from, EventJournal.ReplayConsumer consumer) {
+        return journal.replaySince(from.toEpochMilli(), consumer);
+    }
+
+    @Override
+    public Subscription addSubscriber(Class<? extends BaseEvent> clazz, Consumer<BaseEvent> subscriber, SubscriberOptions options) {
+        return delegate.addSubscriber(clazz, subscriber, options);
+    }
+
+    @Override
+    public Subscription addSubscriberForFilteredEvents(Class<? extends BaseEvent> clazz, Predicate<BaseEvent> filter, Consumer<BaseEvent> subscriber, SubscriberOptions options) {
+        return delegate.addSubscriberForFilteredEvents(clazz, filter, subscriber, options);
+    }
+
+    @Override
+    public void registerSubscriptionKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction) {
+        delegate.registerSubscriptionKey(clazz, keyFunction);
+    }
+
+    @Override
+    public Subscription addSubscriberForKey(Class<? extends BaseEvent> clazz, Object key, Consumer<BaseEvent> subscriber, SubscriberOptions options) {
+        return delegate.addSubscriberForKey(clazz, key, subscriber, options);
+    }
+
+    @Override
+    public Subscription addBatchSubscriber(Class<? extends BaseEvent> clazz, Consumer<List<BaseEvent>> subscriber, int maxBatchSize, long maxBatchDelayMicros, SubscriberOptions options) {
+        return delegate.addBatchSubscriber(clazz, subscriber, maxBatchSize, maxBatchDelayMicros, options);
+    }
+
+    @Override
+    public void registerCoalescingKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction) {
+        delegate.registerCoalescingKey(clazz, keyFunction);
+    }
+
+    @Override
+    public PublishResult publishEvent(BaseEvent event) {
+        if (closed || journal.tryAppend(event) < 0) {
+            return PublishResult.CLOSED;
+        }
+        return delegate.publishEvent(event);
+    }
+
+    @Override
+    public PublishResult tryPublish(BaseEvent event) {
+        if (closed || journal.tryAppend(event) < 0) {
+            return PublishResult.CLOSED;
+        }
+        return delegate.tryPublish(event);
+    }
+
+    @Override
+    public CompletionStage<PublishResult> publishAsync(BaseEvent event) {
+        if (closed || journal.tryAppend(event) < 0) {
+            return CompletableFuture.completedFuture(PublishResult.CLOSED);
+        }
+        return delegate.publishAsync(event);
+    }
+
+    @Override
+    public int publishEvents(Collection<? extends BaseEvent> events) {
+        if (closed) {
+            return 0;
+        }
+        for (BaseEvent event : events) {
+            if (journal.tryAppend(event) < 0) {
+                return 0; // Shut down while journaling
+            }
+        }
+        return delegate.publishEvents(events);
+    }
+
+    @Override
+    public int publishEvents(BaseEvent... events) {
+        return publishEvents(Arrays.asList(events));
+    }
+
+    /**
+     * Shuts down the underlying bus, then flushes and closes the journal.
+     */
+    @Override
+    public int shutdown(Duration drainDeadline) {
+        closed = true;
+        int undelivered = delegate.shutdown(drainDeadline);
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing event journal: " + e.getMessage());
+        }
+        return undelivered;
+    }
+}
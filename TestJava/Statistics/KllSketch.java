@@ -0,0 +1,236 @@
+package Statistics;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * KLL sketch (Karnin, Lang and Liberty): a {@link QuantileSketch} with a rank error
+ * guarantee that does not depend on the distribution of the values.
+ * <p>
+ * Values are kept in a stack of compactors. An item at level {@code h} stands for
+ * {@code 2^h} added values. When the sketch is full, the lowest compactor over its
+ * capacity is sorted and every other item, starting at random, moves up a level. The
+ * capacities shrink by a factor of 2/3 from the top level down, so the sketch holds
+ * {@code O(k)} items in total.
+ */
+final class KllSketch implements QuantileSketch {
+    private static final double CAPACITY_RATIO = 2.0 / 3;
+    private static final int MAX_LEVELS = 64;
+
+    private final int k;
+    private final SplittableRandom random = new SplittableRandom();
+    private final List<double[]> levels = new ArrayList<>(); // Items of each level, in sizes[level] slots
+    private int[] sizes = new int[0];
+    private int[] capacities = new int[0]; // Of each level, for the current number of levels
+    private int size;     // Items held across all levels
+    private int capacity; // Items held before compacting
+    private long count;
+
+    KllSketch(int k) {
+        if (k < 8 || k > 65535) {
+            throw new IllegalArgumentException("k must be between 8 and 65535");
+        }
+        this.k = k;
+        grow();
+    }
+
+    private void grow() {
+        int levelCount = levels.size() + 1;
+        sizes = Arrays.copyOf(sizes, levelCount);
+        capacities = new int[levelCount];
+        capacity = 0;
+        for (int level = 0; level < levelCount; level++) {
+            capacities[level] = (int) Math.ceil(Math.pow(CAPACITY_RATIO, levelCount - level - 1) * k) + 1;
+            capacity += capacities[level];
+        }
+        levels.add(new double[capacities[levelCount - 1]]);
+    }
+
+    @Override
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Cannot add NaN");
+        }
+        append(0, value);
+        count++;
+        if (size >= capacity) {
+            compress();
+        }
+    }
+
+    private void append(int level, double value) {
+        double[] items = levels.get(level);
+        if (sizes[level] == items.length) {
+            items = Arrays.copyOf(items, Math.max(2, items.length * 2));
+            levels.set(level, items);
+        }
+        items[sizes[level]++] = value;
+        size++;
+    }
+
+    private void compress() {
+        while (size >= capacity) {
+            for (int level = 0; level < levels.size(); level++) {
+                if (sizes[level] >= capacities[level]) {
+                    if (level + 1 == levels.size()) {
+                        if (levels.size() == MAX_LEVELS) {
+                            throw new IllegalStateException("KLL sketch cannot grow beyond " + MAX_LEVELS + " levels");
+                        }
+                        grow();
+                    }
+                    compact(level);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Promotes every other item of a level, keeping the largest one back if the count is odd.
+     */
+    private void compact(int level) {
+        double[] items = levels.get(level);
+        int length = sizes[level];
+        Arrays.sort(items, 0, length);
+        int paired = length & ~1;
+        for (int i = random.nextBoolean() ? 1 : 0; i < paired; i += 2) {
+            append(level + 1, items[i]);
+        }
+        size -= paired;
+        if (paired < length) {
+            items[0] = items[length - 1];
+        }
+        sizes[level] = length - paired;
+    }
+
+    @Override
+    public void merge(QuantileSketch other) {
+        if (!(other instanceof KllSketch sketch) || sketch.k != k) {
+            throw new IllegalArgumentException("Can only merge a KLL sketch with the same k");
+        }
+        // Copied first, as appending changes the levels being read when a sketch merges into itself
+        double[][] merged = new double[sketch.levels.size()][];
+        for (int level = 0; level < merged.length; level++) {
+            merged[level] = Arrays.copyOf(sketch.levels.get(level), sketch.sizes[level]);
+        }
+        long mergedCount = sketch.count;
+        while (levels.size() < merged.length) {
+            grow();
+        }
+        for (int level = 0; level < merged.length; level++) {
+            for (double item : merged[level]) {
+                append(level, item);
+            }
+        }
+        count += mergedCount;
+        compress();
+    }
+
+    @Override
+    public double quantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double[] values = new double[size];
+        long[] weights = new long[size];
+        sortedItems(values, weights);
+        long total = 0;
+        for (long weight : weights) {
+            total += weight;
+        }
+        double rank = Math.min(Math.max(quantile, 0), 1) * total;
+        long cumulative = 0;
+        for (int i = 0; i < values.length; i++) {
+            cumulative += weights[i];
+            if (cumulative >= rank) {
+                return values[i];
+            }
+        }
+        return values[values.length - 1];
+    }
+
+    /**
+     * Fills the arrays with every item and its weight, in ascending order of item.
+     */
+    private void sortedItems(double[] values, long[] weights) {
+        int merged = 0;
+        for (int level = 0; level < levels.size(); level++) {
+            double[] items = Arrays.copyOf(levels.get(level), sizes[level]);
+            Arrays.sort(items);
+            long weight = 1L << level;
+            // Merge the level into the items gathered so far, from the back
+            int gathered = merged - 1;
+            int target = merged + items.length - 1;
+            for (int i = items.length - 1; i >= 0; target--) {
+                if (gathered >= 0 && values[gathered] > items[i]) {
+                    values[target] = values[gathered];
+                    weights[target] = weights[gathered--];
+                } else {
+                    values[target] = items[i--];
+                    weights[target] = weight;
+                }
+            }
+            merged += items.length;
+        }
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public void forEach(WeightedValueConsumer consumer) {
+        double[] values = new double[size];
+        long[] weights = new long[size];
+        sortedItems(values, weights);
+        for (int i = 0; i < values.length; i++) {
+            consumer.accept(values[i], weights[i]);
+        }
+    }
+
+    @Override
+    public QuantileSketch emptyCopy() {
+        return new KllSketch(k);
+    }
+
+    /**
+     * Layout: kind, k, count, number of levels, then the number of items of each level followed by the items.
+     */
+    @Override
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(KLL);
+        SketchEncoding.putVarLong(out, k);
+        SketchEncoding.putVarLong(out, count);
+        SketchEncoding.putVarLong(out, levels.size());
+        for (int level = 0; level < levels.size(); level++) {
+            double[] items = levels.get(level);
+            SketchEncoding.putVarLong(out, sizes[level]);
+            for (int i = 0; i < sizes[level]; i++) {
+                SketchEncoding.putDouble(out, items[i]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static KllSketch read(ByteBuffer source) {
+        KllSketch sketch = new KllSketch(SketchEncoding.getLength(source, 65535));
+        sketch.count = SketchEncoding.getVarLong(source);
+        int levelCount = SketchEncoding.getLength(source, MAX_LEVELS);
+        while (sketch.levels.size() < levelCount) {
+            sketch.grow();
+        }
+        for (int level = 0; level < levelCount; level++) {
+            int items = SketchEncoding.getLength(source, source.remaining() / Double.BYTES);
+            for (int i = 0; i < items; i++) {
+                sketch.append(level, SketchEncoding.getDouble(source));
+            }
+        }
+        return sketch;
+    }
+}
@@ -0,0 +1,53 @@
+package Statistics;
+
+import java.util.HashMap;
+
+/**
+ * Sliding window of latencies in microseconds, backed by a pull-only {@link SlidingWindowStatisticsImpl}.
+ * <p>
+ * The window is only created once latency recording has been switched on by a latency
+ * read, so until somebody looks at the numbers the cost of a recorder is the
+ * {@link #isEnabled()} check. Recording takes no lock: it claims a slot in the window's
+ * multi-producer ring, and only {@link #snapshot()} counts the ring into the window.
+ * Stripes would not suit here, as delivery may run on a new virtual thread every time.
+ */
+class LatencyRecorder {
+    private static final int WINDOW_CAPACITY = 4096;
+
+    private final EventBusMetricsImpl metrics;
+    private volatile SlidingWindowStatisticsImpl window; // Created by the first record
+
+    LatencyRecorder(EventBusMetricsImpl metrics) {
+        this.metrics = metrics;
+    }
+
+    boolean isEnabled() {
+        return metrics.isLatencyEnabled();
+    }
+
+    /**
+     * @param nanos a latency measured with {@link System#nanoTime()}
+     */
+    void record(long nanos) {
+        SlidingWindowStatisticsImpl current = window;
+        if (current == null) {
+            current = createWindow();
+        }
+        current.add((int) Math.min(nanos / 1000, Integer.MAX_VALUE));
+    }
+
+    private synchronized SlidingWindowStatisticsImpl createWindow() {
+        if (window == null) {
+            window = new SlidingWindowStatisticsImpl(WINDOW_CAPACITY);
+        }
+        return window;
+    }
+
+    /**
+     * @return the latencies of the last second, in microseconds
+     */
+    synchronized SlidingWindowStatistics.Statistics snapshot() {
+        SlidingWindowStatisticsImpl current = window;
+        return current != null ? current.getLatestStatistics() : new StatisticsImpl(new HashMap<>());
+    }
+}
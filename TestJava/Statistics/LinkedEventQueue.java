@@ -0,0 +1,74 @@
+package Statistics;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+class LinkedEventQueue implements EventQueue {
+    private final BlockingQueue<Event<BaseEvent>> eventQueue; // Event queue
+    private final int capacity;
+    private volatile Thread waitingConsumer; // Set while the dispatcher is parked
+
+    LinkedEventQueue(int capacity) {
+        this.capacity = capacity;
+        this.eventQueue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public boolean tryOffer(BaseEvent event) {
+        if (!eventQueue.offer(new Event<>(event))) {
+            return false;
+        }
+        signalConsumer();
+        return true;
+    }
+
+    @Override
+    public boolean offer(BaseEvent event, long timeoutNanos) throws InterruptedException {
+        if (timeoutNanos == Long.MAX_VALUE) {
+            eventQueue.put(new Event<>(event));
+        } else if (!eventQueue.offer(new Event<>(event), timeoutNanos, TimeUnit.NANOSECONDS)) {
+            return false;
+        }
+        signalConsumer();
+        return true;
+    }
+
+    private void signalConsumer() {
+        Thread waiter = waitingConsumer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    @Override
+    public void awaitEvent() throws InterruptedException {
+        while (eventQueue.isEmpty()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitingConsumer = Thread.currentThread();
+            if (eventQueue.isEmpty()) { // Re-check after announcing ourselves
+                LockSupport.park(this);
+            }
+            waitingConsumer = null;
+        }
+    }
+
+    @Override
+    public BaseEvent poll() {
+        Event<BaseEvent> event = eventQueue.poll();
+        return event == null ? null : event.getEvent();
+    }
+
+    @Override
+    public int size() {
+        return eventQueue.size();
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -4,73 +4,429 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
+/**
+ * Bounded, lock-free ring buffer for any number of producers and consumers.
+ * <p>
+ * Positions are ever-increasing longs, mapped to slots with a power-of-two mask. Each
+ * slot carries its own sequence, which tells producers and consumers what state the
+ * slot is in for a given position:
+ * <ul>
+ *     <li>{@code position}: free, a producer may claim it for that position</li>
+ *     <li>{@code position + 1}: holds the published item for that position</li>
+ *     <li>{@code position + slots}: freed by a consumer, ready for the next lap</li>
+ * </ul>
+ * A producer claims a position by advancing the head, writes the item and then publishes
+ * it by releasing the slot sequence; a consumer does the same with the tail. Contended
+ * claims are retried rather than failed, so {@link #add} only returns false when the
+ * buffer really holds {@code capacity} items. The head and tail live on separate cache
+ * lines.
+ * <p>
+ * The bulk operations ({@link #drainTo}, {@link #advanceTailBy}, {@link #advanceTailUntil})
+ * look at the published items from the tail on, then take all of them with a single CAS
+ * on the tail. The CAS only succeeds if no other consumer moved the tail in between, and
+ * a slot cannot be reused before the tail has passed it, so the items looked at are
+ * exactly the items taken.
+ * <p>
+ * Consumers that would rather wait than poll use {@link #take}, {@link #poll(long, TimeUnit)}
+ * or the timed {@link #drainTo(Consumer, int, long, TimeUnit)}, which wait according to the
+ * buffer's {@link WaitStrategy}.
+ */
 public class LockFreeRingBuffer<T> implements Iterable<T> {
     private final AtomicReferenceArray<T> buffer;
-    private final AtomicInteger head;
-    private final AtomicInteger tail;
+    private final AtomicLongArray sequences; // Per slot, see the class comment
+    private final PaddedSequence head = new PaddedSequence(); // Next position to claim
+    private final PaddedSequence tail = new PaddedSequence(); // Oldest position not yet consumed
     private final int capacity;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
 
     public LockFreeRingBuffer(int capacity) {
+        this(capacity, WaitStrategy.park());
+    }
+
+    /**
+     * @param capacity the maximum number of items held
+     * @param waitStrategy how consumers wait in the blocking operations
+     */
+    public LockFreeRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        int slots = Integer.highestOneBit(capacity);
+        slots = slots == capacity ? capacity : slots << 1; // Round up to a power of two
         this.capacity = capacity;
-        this.buffer = new AtomicReferenceArray<>(capacity);
-        this.head = new AtomicInteger(0);
-        this.tail = new AtomicInteger(0);
+        this.mask = slots - 1;
+        this.waitStrategy = Objects.requireNonNull(waitStrategy, "waitStrategy cannot be null");
+        this.buffer = new AtomicReferenceArray<>(slots);
+        this.sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            sequences.set(i, i);
+        }
     }
 
+    /**
+     * Appends an item.
+     *
+     * @return false if the buffer already holds {@code capacity} items
+     */
     public boolean add(T item) {
-        int currentHead = head.get();
-        int nextHead = (currentHead + 1) % capacity;
+        Objects.requireNonNull(item, "item cannot be null");
+        long position = head.get();
+        while (true) {
+            if (position - tail.get() >= capacity) {
+                return false; // Buffer is full
+            }
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (head.compareAndSet(position, position + 1)) {
+                    buffer.set(index, item);
+                    sequences.set(index, position + 1); // Publish
+                    waitStrategy.signal();
+                    return true;
+                }
+                position = head.get(); // Another producer claimed it first
+            } else if (sequence < position) {
+                return false; // The item from the previous lap has not been consumed yet
+            } else {
+                position = head.get();
+            }
+        }
+    }
 
-        // Check if the buffer is full
-        if (nextHead == tail.get()) {
-            return false; // Buffer is full
+    /**
+     * Returns the item {@code index} positions after the oldest one.
+     *
+     * @return the item, or null if there is no published item at that index
+     */
+    public T get(int index) {
+        if (index < 0) {
+            return null;
         }
+        long position = tail.get() + index;
+        int slot = (int) position & mask;
+        if (sequences.get(slot) != position + 1) {
+            return null;
+        }
+        T item = buffer.get(slot);
+        return sequences.get(slot) == position + 1 ? item : null; // Not consumed while reading
+    }
 
-        // Attempt to set the item at the current head position
-        if (buffer.compareAndSet(currentHead, null, item)) {
-            head.set(nextHead); // Move head forward
-            return true;
+    /**
+     * Removes the oldest item.
+     *
+     * @return false if there was no published item to remove
+     */
+    public boolean advanceTail() {
+        return poll() != null;
+    }
+
+    /**
+     * Removes the oldest item without waiting.
+     *
+     * @return the item, or null if no item is published
+     */
+    public T poll() {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position + 1) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    T item = buffer.get(index);
+                    buffer.set(index, null); // Let the item be collected
+                    sequences.set(index, position + mask + 1); // Free the slot for the next lap
+                    return item;
+                }
+                position = tail.get(); // Another consumer removed it first
+            } else if (sequence < position + 1) {
+                return null; // Empty, or the next item is claimed but not yet published
+            } else {
+                position = tail.get();
+            }
         }
-        return false; // Failed to add item
     }
 
-    public T get(int index) {
-        return buffer.get(index);
+    /**
+     * Removes up to {@code max} of the oldest items and hands them to the consumer, oldest first.
+     *
+     * @return the number of items removed
+     */
+    public int drainTo(Consumer<? super T> consumer, int max) {
+        Objects.requireNonNull(consumer, "consumer cannot be null");
+        return takeFromTail(max, null, consumer);
+    }
+
+    /**
+     * Removes up to {@code count} of the oldest items.
+     *
+     * @return the number of items removed, less than {@code count} if fewer were published
+     */
+    public int advanceTailBy(int count) {
+        return takeFromTail(count, null, null);
+    }
+
+    /**
+     * Removes the oldest items up to, but not including, the first one that matches the predicate,
+     * e.g. every measurement that has fallen out of a time window.
+     *
+     * @return the number of items removed
+     */
+    public int advanceTailUntil(Predicate<? super T> stop) {
+        Objects.requireNonNull(stop, "stop cannot be null");
+        return takeFromTail(Integer.MAX_VALUE, stop, null);
+    }
+
+    /**
+     * Removes the oldest item, waiting up to the timeout for one to be published.
+     *
+     * @return the item, or null if the timeout elapsed first
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            T item = poll();
+            if (item != null) {
+                return item;
+            }
+            if (!waitStrategy.await(this::isNextPublished, deadline - System.nanoTime())) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest item, waiting for one to be published if necessary.
+     */
+    public T take() throws InterruptedException {
+        while (true) {
+            T item = poll();
+            if (item != null) {
+                return item;
+            }
+            waitStrategy.await(this::isNextPublished, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Waits up to the timeout for an item to be published, then removes up to {@code max} of the
+     * oldest items and hands them to the consumer, oldest first.
+     *
+     * @return the number of items removed, 0 if the timeout elapsed first
+     */
+    public int drainTo(Consumer<? super T> consumer, int max, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(consumer, "consumer cannot be null");
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            int drained = takeFromTail(max, null, consumer);
+            if (drained > 0 || max <= 0) {
+                return drained;
+            }
+            if (!waitStrategy.await(this::isNextPublished, deadline - System.nanoTime())) {
+                return 0;
+            }
+        }
+    }
+
+    private boolean isNextPublished() {
+        long position = tail.get();
+        return sequences.get((int) position & mask) == position + 1;
     }
 
-    public void advanceTail() {
-        tail.set((tail.get() + 1) % capacity);
+    private int takeFromTail(int max, Predicate<? super T> stop, Consumer<? super T> consumer) {
+        if (max <= 0) {
+            return 0;
+        }
+        retry:
+        while (true) {
+            long position = tail.get();
+            int count = 0;
+            while (count < max) {
+                int index = (int) (position + count) & mask;
+                long sequence = position + count + 1;
+                if (sequences.get(index) != sequence) {
+                    break; // Not published
+                }
+                if (stop != null) {
+                    T item = buffer.get(index);
+                    if (sequences.get(index) != sequence) {
+                        continue retry; // Taken by another consumer while looking at it
+                    }
+                    if (stop.test(item)) {
+                        break;
+                    }
+                }
+                count++;
+            }
+            if (count == 0) {
+                return 0;
+            }
+            if (tail.compareAndSet(position, position + count)) {
+                for (int i = 0; i < count; i++) {
+                    int index = (int) (position + i) & mask;
+                    T item = buffer.get(index);
+                    buffer.set(index, null); // Let the item be collected
+                    sequences.set(index, position + i + mask + 1); // Free the slot for the next lap
+                    if (consumer != null) {
+                        consumer.accept(item);
+                    }
+                }
+                return count;
+            }
+            // Another consumer moved the tail, look again
+        }
     }
 
+    /**
+     * Takes a view of the published items without copying them. Reading through the view is not
+     * synchronised with consumers; after reading, {@link Snapshot#isValid()} tells whether every
+     * item read was still in the buffer, in the manner of a sequence lock.
+     */
+    public Snapshot snapshot() {
+        long first = tail.get();
+        long limit = head.get();
+        long end = first;
+        while (end < limit && sequences.get((int) end & mask) == end + 1) {
+            end++;
+        }
+        return new Snapshot(first, end);
+    }
+
+    /**
+     * @return the number of items held, including any that producers have claimed but not yet published
+     */
     public int size() {
-        return (head.get() - tail.get() + capacity) % capacity;
+        long currentTail = tail.get();
+        long held = head.get() - currentTail;
+        return (int) Math.max(0, Math.min(held, capacity));
+    }
+
+    public int capacity() {
+        return capacity;
     }
 
+    /**
+     * Iterates from the oldest to the newest item published when iteration starts. Items consumed
+     * during iteration are skipped, and iteration stops at an item that has been claimed but not
+     * yet published, so that items are always seen in order.
+     */
     @Override
     public @NotNull Iterator<T> iterator() {
         return new RingBufferIterator();
     }
 
     private class RingBufferIterator implements Iterator<T> {
-        private int currentIndex = tail.get();
-        private final int endIndex = head.get();
+        private long position = tail.get();
+        private long endPosition = head.get();
+        private T next;
+
+        private RingBufferIterator() {
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (position < endPosition) {
+                int index = (int) position & mask;
+                long sequence = sequences.get(index);
+                if (sequence == position + 1) {
+                    T item = buffer.get(index);
+                    boolean stillHeld = sequences.get(index) == position + 1;
+                    position++;
+                    if (stillHeld) {
+                        next = item;
+                        return;
+                    }
+                } else if (sequence > position + 1) {
+                    position = Math.max(position + 1, tail.get()); // Consumed, skip to the oldest remaining item
+                } else {
+                    endPosition = position; // Not yet published
+                }
+            }
+        }
 
         @Override
         public boolean hasNext() {
-            return currentIndex != endIndex;
+            return next != null;
         }
 
         @Override
         public T next() {
-            if (!hasNext()) {
+            if (next == null) {
                 throw new NoSuchElementException();
             }
-            T item = buffer.get(currentIndex);
-            currentIndex = (currentIndex + 1) % capacity;
+            T item = next;
+            advance();
             return item;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * A view of the items at positions {@code [firstSequence, endSequence)} of the buffer.
+     */
+    public final class Snapshot implements Iterable<T> {
+        private final long firstSequence;
+        private final long endSequence;
+
+        private Snapshot(long firstSequence, long endSequence) {
+            this.firstSequence = firstSequence;
+            this.endSequence = endSequence;
+        }
+
+        public long firstSequence() {
+            return firstSequence;
+        }
+
+        public long endSequence() {
+            return endSequence;
+        }
+
+        public int size() {
+            return (int) (endSequence - firstSequence);
+        }
+
+        /**
+         * @return the item at the given index of the view; only meaningful if the view is still valid afterwards
+         */
+        public T get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return buffer.get((int) (firstSequence + index) & mask);
+        }
+
+        /**
+         * @return true if no item of the view has been removed from the buffer, so everything read so far is consistent
+         */
+        public boolean isValid() {
+            return tail.get() <= firstSequence;
+        }
+
+        @Override
+        public @NotNull Iterator<T> iterator() {
+            return new Iterator<>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < size();
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return get(index++);
+                }
+            };
+        }
+    }
+}
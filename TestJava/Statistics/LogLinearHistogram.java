@@ -0,0 +1,313 @@
+package Statistics;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-memory histogram with log-linear buckets, in the manner of HdrHistogram.
+ * <p>
+ * Values are grouped into buckets that double in width from one power of two to the next,
+ * each split into the same number of linear sub-buckets, so every value is counted with
+ * the configured number of significant decimal digits: with 2 digits, values up to 255 are
+ * counted exactly and larger values to within 1%. The counts live in a single
+ * {@code long[]} whose length depends only on the value range and precision, never on the
+ * number of values recorded or how many of them are distinct.
+ * <p>
+ * Negative values are counted by magnitude in a second array of the same layout, allocated
+ * the first time one is recorded. Not thread-safe.
+ */
+public final class LogLinearHistogram {
+    /**
+     * Receives the non-empty buckets visited by {@link #forEach}.
+     */
+    @FunctionalInterface
+    public interface ValueCountConsumer {
+        void accept(long value, long count);
+    }
+
+    private final long highestTrackableValue;
+    private final int significantDigits;
+    private final int subBucketCount;
+    private final int subBucketHalfCount;
+    private final int subBucketHalfCountMagnitude;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+    private final long[] counts;
+    private long[] negativeCounts; // By magnitude, null until a negative value is recorded
+    private long totalCount;
+
+    /**
+     * @param highestTrackableValue the largest magnitude that can be recorded, at least 2
+     * @param significantDigits the decimal digits of precision kept for every value, from 1 to 5
+     */
+    public LogLinearHistogram(long highestTrackableValue, int significantDigits) {
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("significantDigits must be between 1 and 5");
+        }
+        if (highestTrackableValue < 2) {
+            throw new IllegalArgumentException("highestTrackableValue must be at least 2");
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.significantDigits = significantDigits;
+
+        // Enough linear sub-buckets to tell apart values that differ in the last significant digit
+        long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+        this.subBucketCount = 1 << subBucketCountMagnitude;
+        this.subBucketHalfCount = subBucketCount / 2;
+        this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        this.subBucketMask = subBucketCount - 1;
+        this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+        int bucketCount = 1;
+        for (long smallestUntrackable = subBucketCount; smallestUntrackable <= highestTrackableValue; smallestUntrackable <<= 1) {
+            bucketCount++;
+            if (smallestUntrackable > Long.MAX_VALUE / 2) {
+                break; // The next bucket covers the rest of the long range
+            }
+        }
+        this.counts = new long[(bucketCount + 1) * subBucketHalfCount];
+    }
+
+    private LogLinearHistogram(LogLinearHistogram source) {
+        this.highestTrackableValue = source.highestTrackableValue;
+        this.significantDigits = source.significantDigits;
+        this.subBucketCount = source.subBucketCount;
+        this.subBucketHalfCount = source.subBucketHalfCount;
+        this.subBucketHalfCountMagnitude = source.subBucketHalfCountMagnitude;
+        this.subBucketMask = source.subBucketMask;
+        this.leadingZeroCountBase = source.leadingZeroCountBase;
+        this.counts = source.counts.clone();
+        this.negativeCounts = source.negativeCounts != null ? source.negativeCounts.clone() : null;
+        this.totalCount = source.totalCount;
+    }
+
+    /**
+     * @return an independent copy of this histogram
+     */
+    public LogLinearHistogram copy() {
+        return new LogLinearHistogram(this);
+    }
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * Adds {@code count} occurrences of the value; a negative count removes occurrences recorded earlier.
+     *
+     * @throws IllegalArgumentException if the magnitude of the value exceeds the highest trackable value
+     */
+    public void record(long value, long count) {
+        addAtIndex(indexOf(value), count);
+    }
+
+    /**
+     * Returns the slot that counts the value: the index into the counts for a value of zero or more,
+     * or the bitwise complement of the index into the negative counts for a negative value.
+     */
+    int indexOf(long value) {
+        long magnitude = Math.abs(value);
+        if (magnitude > highestTrackableValue || magnitude < 0) { // Long.MIN_VALUE has no positive magnitude
+            throw new IllegalArgumentException(value + " is outside the trackable range of +/-" + highestTrackableValue);
+        }
+        int index = countsIndex(magnitude);
+        return value < 0 ? ~index : index;
+    }
+
+    /**
+     * Adds to the slot returned by {@link #indexOf}.
+     */
+    void addAtIndex(int index, long count) {
+        if (index >= 0) {
+            counts[index] += count;
+        } else {
+            if (negativeCounts == null) {
+                negativeCounts = new long[counts.length];
+            }
+            negativeCounts[~index] += count;
+        }
+        totalCount += count;
+    }
+
+    /**
+     * Adds every count of another histogram with the same range and precision to this one.
+     */
+    public void add(LogLinearHistogram other) {
+        merge(other, 1);
+    }
+
+    /**
+     * Removes every count of another histogram with the same range and precision from this one.
+     */
+    public void subtract(LogLinearHistogram other) {
+        merge(other, -1);
+    }
+
+    private void merge(LogLinearHistogram other, int sign) {
+        if (other.counts.length != counts.length || other.subBucketCount != subBucketCount) {
+            throw new IllegalArgumentException("Histograms must have the same range and precision");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += sign * other.counts[i];
+        }
+        if (other.negativeCounts != null) {
+            if (negativeCounts == null) {
+                negativeCounts = new long[counts.length];
+            }
+            for (int i = 0; i < counts.length; i++) {
+                negativeCounts[i] += sign * other.negativeCounts[i];
+            }
+        }
+        totalCount += sign * other.totalCount;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        if (negativeCounts != null) {
+            Arrays.fill(negativeCounts, 0);
+        }
+        totalCount = 0;
+    }
+
+    public long totalCount() {
+        return totalCount;
+    }
+
+    public long highestTrackableValue() {
+        return highestTrackableValue;
+    }
+
+    public int significantDigits() {
+        return significantDigits;
+    }
+
+    /**
+     * Returns the value at or below which the given percentage of the recorded values fall, weighing
+     * each bucket by its count. Values are reported as the highest value their bucket holds, so the
+     * result is never below the exact percentile.
+     *
+     * @param percentile from 0 to 100
+     * @return the value at the percentile, or 0 if the histogram is empty
+     */
+    public long valueAtPercentile(double percentile) {
+        if (totalCount <= 0) {
+            return 0;
+        }
+        double clamped = Math.min(Math.max(percentile, 0), 100);
+        long rank = Math.max(1, (long) Math.ceil(clamped / 100 * totalCount)); // Counting from 1
+        long cumulative = 0;
+        if (negativeCounts != null) {
+            for (int i = negativeCounts.length - 1; i >= 0; i--) { // Most negative first
+                cumulative += negativeCounts[i];
+                if (cumulative >= rank) {
+                    return -valueFromIndex(i);
+                }
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                return highestEquivalentValue(valueFromIndex(i));
+            }
+        }
+        return maxValue(); // Only reached if counts were removed that were never recorded
+    }
+
+    /**
+     * @return the value of the bucket with the highest count, the lowest such value on a tie, or 0 if the histogram is empty
+     */
+    public long mode() {
+        long mode = 0;
+        long maxCount = 0;
+        if (negativeCounts != null) {
+            for (int i = negativeCounts.length - 1; i >= 0; i--) {
+                if (negativeCounts[i] > maxCount) {
+                    maxCount = negativeCounts[i];
+                    mode = -valueFromIndex(i);
+                }
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > maxCount) {
+                maxCount = counts[i];
+                mode = valueFromIndex(i);
+            }
+        }
+        return mode;
+    }
+
+    private long maxValue() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return highestEquivalentValue(valueFromIndex(i));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Visits the non-empty buckets in ascending order of value. Each bucket is reported as the value
+     * closest to zero that it holds, which within the exactly counted range is the value itself.
+     */
+    public void forEach(ValueCountConsumer consumer) {
+        if (negativeCounts != null) {
+            for (int i = negativeCounts.length - 1; i >= 0; i--) {
+                if (negativeCounts[i] != 0) {
+                    consumer.accept(-valueFromIndex(i), negativeCounts[i]);
+                }
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                consumer.accept(valueFromIndex(i), counts[i]);
+            }
+        }
+    }
+
+    private int countsIndex(long magnitude) {
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(magnitude | subBucketMask);
+        int subBucketIndex = (int) (magnitude >>> bucketIndex);
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+    }
+
+    /**
+     * @return the lowest magnitude counted at the index
+     */
+    private long valueFromIndex(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return (long) subBucketIndex << bucketIndex;
+    }
+
+    private long highestEquivalentValue(long magnitude) {
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(magnitude | subBucketMask);
+        return magnitude + (1L << bucketIndex) - 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LogLinearHistogram other)) {
+            return false;
+        }
+        return highestTrackableValue == other.highestTrackableValue && significantDigits == other.significantDigits
+                && Arrays.equals(counts, other.counts) && Arrays.equals(negativeCounts(), other.negativeCounts());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(counts) + Arrays.hashCode(negativeCounts());
+    }
+
+    private long[] negativeCounts() {
+        return negativeCounts != null ? negativeCounts : new long[counts.length]; // Unallocated equals all zero
+    }
+
+    @Override
+    public String toString() {
+        return "LogLinearHistogram[totalCount=" + totalCount + ", significantDigits=" + significantDigits + "]";
+    }
+}
@@ -0,0 +1,160 @@
+package Statistics;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies the {@link OverflowPolicy} of an {@link EventBusImpl} when its event queue is full.
+ * <p>
+ * Under {@link OverflowPolicy#SPILL}, once anything has spilled every later event is
+ * spilled too, until the dispatcher has moved the backlog back into the event queue,
+ * so events from one publisher are never reordered across the two tiers.
+ * <p>
+ * A conflation slot whose queue entry is dropped or refused is emptied, unless an event
+ * was coalesced into it in the meantime. That event was reported as accepted, so the
+ * slot stays pending and the dispatcher puts it back on the queue.
+ */
+class OverflowHandler {
+    // Wakes the dispatcher when the first event spills into an otherwise idle bus
+    static final BaseEvent SPILL_SIGNAL = () -> false;
+
+    private final EventQueue eventQueue;
+    private final EventBusMetricsImpl metrics;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final Queue<BaseEvent> spillTier;
+    private final AtomicInteger spilled = new AtomicInteger(); // Events currently in the spill tier
+    private final Queue<ConflationSlot> requeued = new ConcurrentLinkedQueue<>(); // Pending slots that lost their queue entry
+
+    OverflowHandler(EventQueue eventQueue, EventBusMetricsImpl metrics, OverflowPolicy overflowPolicy, long blockTimeoutNanos, Queue<BaseEvent> spillTier) {
+        this.eventQueue = eventQueue;
+        this.metrics = metrics;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = blockTimeoutNanos;
+        this.spillTier = spillTier;
+    }
+
+    /**
+     * Enqueues an event for dispatch, applying the overflow policy if the queue is full.
+     *
+     * @param published the event being published
+     * @param queued the event, or the conflation slot it made pending, to enqueue
+     * @param mayBlock false to refuse instead of waiting under {@link OverflowPolicy#BLOCK}
+     */
+    PublishResult offer(BaseEvent published, BaseEvent queued, boolean mayBlock) {
+        PublishResult result;
+        if (overflowPolicy == OverflowPolicy.SPILL && spilled.get() > 0) {
+            result = spill(queued); // Stay behind what has already spilled
+        } else if (eventQueue.tryOffer(queued)) {
+            return PublishResult.ACCEPTED;
+        } else {
+            result = overflow(queued, mayBlock);
+        }
+        if (!result.isAccepted() && !discard(queued, published)) {
+            eventQueue.tryOffer(SPILL_SIGNAL); // Wakes an idle dispatcher to requeue the slot; if the queue is full it is busy anyway
+        }
+        return result;
+    }
+
+    private PublishResult overflow(BaseEvent queued, boolean mayBlock) {
+        return switch (overflowPolicy) {
+            case REJECT -> PublishResult.REJECTED;
+            case DROP_OLDEST -> {
+                do {
+                    BaseEvent dropped = eventQueue.poll();
+                    if (dropped instanceof ConflationSlot slot) {
+                        BaseEvent pending = slot.pending();
+                        if (pending != null && discard(slot, pending)) {
+                            metrics.recordDrop(); // Unless it was requeued, the slot's event is lost
+                        }
+                    } else if (dropped != null && dropped != SPILL_SIGNAL) {
+                        metrics.recordDrop();
+                    }
+                } while (!eventQueue.tryOffer(queued));
+                yield PublishResult.ACCEPTED_AFTER_DROP;
+            }
+            case BLOCK -> mayBlock ? offerBlocking(queued) : PublishResult.REJECTED;
+            case SPILL -> spill(queued);
+        };
+    }
+
+    /**
+     * Called by the dispatcher to put pending slots back on the event queue and to move spilled
+     * events back into it, oldest first.
+     */
+    void refill() {
+        for (ConflationSlot slot = requeued.peek(); slot != null && eventQueue.tryOffer(slot); slot = requeued.peek()) {
+            requeued.poll();
+        }
+        while (spilled.get() > 0) {
+            BaseEvent event = spillTier.peek();
+            if (event == null || !eventQueue.tryOffer(event)) {
+                return;
+            }
+            spillTier.poll(); // Only removed once it is in the event queue, so later spills stay behind it
+            spilled.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return whether events wait outside the event queue, spilled or in a slot to be requeued
+     */
+    boolean hasBacklog() {
+        return spilled.get() > 0 || !requeued.isEmpty();
+    }
+
+    /**
+     * Empties the spill tier and forgets the slots waiting to be requeued.
+     *
+     * @return the number of events discarded
+     */
+    int discardBacklog() {
+        int discarded = 0;
+        while (requeued.poll() != null) {
+            discarded++;
+        }
+        while (spillTier.poll() != null) {
+            spilled.decrementAndGet();
+            discarded++;
+        }
+        return discarded;
+    }
+
+    boolean blocksWhenFull() {
+        return overflowPolicy == OverflowPolicy.BLOCK;
+    }
+
+    private PublishResult offerBlocking(BaseEvent queued) {
+        try {
+            return eventQueue.offer(queued, blockTimeoutNanos) ? PublishResult.ACCEPTED : PublishResult.TIMED_OUT;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore interrupted status
+            return PublishResult.REJECTED;
+        }
+    }
+
+    private PublishResult spill(BaseEvent queued) {
+        if (!spillTier.offer(queued)) {
+            return PublishResult.REJECTED;
+        }
+        if (spilled.incrementAndGet() == 1) {
+            eventQueue.tryOffer(SPILL_SIGNAL); // If the queue is full the dispatcher is busy anyway
+        }
+        return PublishResult.SPILLED;
+    }
+
+    /**
+     * Lets the next event for a slot's key be enqueued again, now that its queue entry is gone.
+     *
+     * @param expected the event the slot is known to hold
+     * @return false if another event was coalesced into the slot meanwhile, which left it pending for the dispatcher to requeue
+     */
+    private boolean discard(BaseEvent queued, BaseEvent expected) {
+        if (queued instanceof ConflationSlot slot && !slot.discard(expected)) {
+            requeued.offer(slot); // Never emptied again here, as that would lose the coalesced event
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,8 @@
+package Statistics;
+
+public enum OverflowPolicy {
+    REJECT,      // The incoming event is refused when the event queue is full
+    DROP_OLDEST, // The oldest queued event is discarded to make room for the incoming one
+    BLOCK,       // The publisher waits for room, up to the configured block timeout
+    SPILL        // The incoming event goes to a slower overflow tier and is re-queued once there is room
+}
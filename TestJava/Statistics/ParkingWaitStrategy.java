@@ -0,0 +1,55 @@
+package Statistics;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Parks waiting consumers until a producer signals them.
+ * <p>
+ * A consumer registers itself before checking the condition one last time and parking;
+ * a producer publishes before looking for registered consumers. One of the two therefore
+ * always sees the other, and no wake-up is lost. When nobody waits, a signal is a single
+ * volatile read.
+ */
+class ParkingWaitStrategy implements WaitStrategy {
+    private final Set<Thread> waiters = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    @Override
+    public boolean await(BooleanSupplier available, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (!available.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long remaining = timeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            Thread current = Thread.currentThread();
+            waiters.add(current);
+            waiting.incrementAndGet();
+            try {
+                if (!available.getAsBoolean()) { // Re-check after announcing ourselves
+                    LockSupport.parkNanos(this, remaining);
+                }
+            } finally {
+                waiting.decrementAndGet();
+                waiters.remove(current);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void signal() {
+        if (waiting.get() > 0) {
+            for (Thread waiter : waiters) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package Statistics;
+
+public enum PublishResult {
+    ACCEPTED(true),             // The event was queued for dispatch
+    COALESCED(true),            // The event replaced a pending event with the same coalescing key, or has no subscribers
+    ACCEPTED_AFTER_DROP(true),  // The event was queued after the oldest queued event was dropped
+    SPILLED(true),              // The event went to the overflow tier and will be dispatched later
+    REJECTED(false),            // The event queue (or the overflow tier) was full
+    TIMED_OUT(false),           // The publisher gave up waiting for room
+    CLOSED(false);              // The bus is shutting down
+
+    private final boolean accepted;
+
+    PublishResult(boolean accepted) {
+        this.accepted = accepted;
+    }
+
+    /**
+     * @return true if the event will be delivered to subscribers
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+}
@@ -0,0 +1,105 @@
+package Statistics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming summary of a distribution that answers quantile queries approximately, with
+ * bounded error, in a small fixed footprint.
+ * <p>
+ * Sketches of the same kind and parameters can be {@linkplain #merge merged}, e.g. the
+ * per-thread or per-node sketches of one metric, and travel as a compact byte form
+ * produced by {@link #toBytes()} and read back with {@link #fromBytes}. Three kinds are
+ * available:
+ * <ul>
+ * <li>{@link #ddSketch}: relative error guarantee on every quantile, suited to values
+ * spanning many orders of magnitude such as latencies in nanoseconds;</li>
+ * <li>{@link #tDigest}: most accurate in the tails, with an error that shrinks towards
+ * the extreme quantiles;</li>
+ * <li>{@link #kll}: rank error guarantee independent of the value distribution.</li>
+ * </ul>
+ * Sketches are not thread-safe; give each thread its own and merge them.
+ */
+public interface QuantileSketch {
+    /**
+     * Receives the weighted values visited by {@link #forEach}.
+     */
+    @FunctionalInterface
+    interface WeightedValueConsumer {
+        void accept(double value, long weight);
+    }
+
+    byte T_DIGEST = 1;
+    byte KLL = 2;
+    byte DD_SKETCH = 3;
+
+    /**
+     * @param compression the size/accuracy trade-off, typically 100; the sketch keeps at most about twice as many centroids
+     */
+    static QuantileSketch tDigest(double compression) {
+        return new TDigest(compression);
+    }
+
+    /**
+     * @param k the size of the largest compactor, typically 200 for a normalized rank error of about 1.3%
+     */
+    static QuantileSketch kll(int k) {
+        return new KllSketch(k);
+    }
+
+    /**
+     * @param relativeAccuracy the relative error bound on every quantile, e.g. 0.01 for 1%
+     */
+    static QuantileSketch ddSketch(double relativeAccuracy) {
+        return new DDSketch(relativeAccuracy);
+    }
+
+    /**
+     * Reads a sketch written by {@link #toBytes()}, of whichever kind.
+     *
+     * @throws IllegalArgumentException if the bytes do not hold a sketch
+     */
+    static QuantileSketch fromBytes(ByteBuffer source) {
+        return switch (source.get()) {
+            case T_DIGEST -> TDigest.read(source);
+            case KLL -> KllSketch.read(source);
+            case DD_SKETCH -> DDSketch.read(source);
+            default -> throw new IllegalArgumentException("Unknown sketch kind");
+        };
+    }
+
+    void add(double value);
+
+    /**
+     * Adds every value summarised by another sketch to this one.
+     *
+     * @throws IllegalArgumentException if the other sketch is of a different kind or has different parameters
+     */
+    void merge(QuantileSketch other);
+
+    /**
+     * @param quantile from 0 to 1
+     * @return an estimate of the value at the quantile, or {@code NaN} if the sketch is empty
+     */
+    double quantile(double quantile);
+
+    /**
+     * @return the exact number of values added
+     */
+    long count();
+
+    /**
+     * Visits the values the sketch retains, with the number of added values each one stands for,
+     * in ascending order of value.
+     */
+    void forEach(WeightedValueConsumer consumer);
+
+    /**
+     * @return an empty sketch of the same kind and parameters
+     */
+    QuantileSketch emptyCopy();
+
+    /**
+     * @return the compact serialized form, starting with the kind of sketch
+     */
+    byte[] toBytes();
+}
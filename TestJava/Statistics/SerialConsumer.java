@@ -0,0 +1,34 @@
+package Statistics;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Consumer that lets one thread at a time into its target, for a subscriber that a
+ * {@link ShardedEventBus} registers on every lane. Each lane's mailbox already delivers
+ * one event at a time; the lock makes the lanes take turns, so the subscriber is never
+ * called concurrently, as on a single {@link EventBusImpl}. A lock rather than
+ * {@code synchronized}, so that a waiting virtual thread does not pin its carrier.
+ */
+final class SerialConsumer<T> implements Consumer<T> {
+    private final Consumer<T> target; // A WeakConsumer if the subscriber is held weakly
+    private final ReentrantLock lock = new ReentrantLock();
+
+    SerialConsumer(Consumer<T> target) {
+        this.target = target;
+    }
+
+    Consumer<T> target() {
+        return target;
+    }
+
+    @Override
+    public void accept(T value) {
+        lock.lock();
+        try {
+            target.accept(value);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package Statistics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Event bus that spreads dispatch over several independent {@link EventBusImpl} lanes,
+ * each with its own event queue and dispatcher thread.
+ * <p>
+ * Every event is routed to exactly one lane: by its partition key if one is registered
+ * for its class, otherwise by its class. Events that share a lane are dispatched in
+ * publish order, so ordering holds per key (or per class) while unrelated streams are
+ * dispatched in parallel. Subscribers are registered on every lane, but the lanes take
+ * turns calling each of them, so a subscriber is never called concurrently, just as on a
+ * single {@link EventBusImpl}; events from different lanes reach it in no defined order.
+ * Filters and key functions may still be called concurrently.
+ * <p>
+ * The lanes of {@link #ShardedEventBus(int)} deliver on one shared thread pool rather than
+ * a pool each.
+ * <p>
+ * Conflation happens inside the lane, so a coalescing key must not be split across
+ * lanes: route coalescing events by class or by a partition key that is the coalescing
+ * key or coarser.
+ */
+public class ShardedEventBus implements EventBus {
+    private final EventBusImpl[] lanes;
+    private final ExecutorService sharedExecutor; // Null unless this bus created the lanes' delivery pool
+    private final ConcurrentHashMap<Class<?>, Function<? super BaseEvent, ?>> partitionKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a bus with the given number of lanes, each a ring-dispatched {@link EventBusImpl}
+     * with default settings. The lanes share one pool of {@link EventBusImpl#DEFAULT_POOL_SIZE}
+     * delivery threads, which the bus shuts down with them.
+     *
+     * @param laneCount the number of dispatcher lanes
+     */
+    public ShardedEventBus(int laneCount) {
+        this(laneCount, newSharedExecutor(laneCount));
+    }
+
+    private ShardedEventBus(int laneCount, ExecutorService sharedExecutor) {
+        this(laneCount, () -> EventBusImpl.builder().dispatchMode(DispatchMode.RING).executor(sharedExecutor).build(), sharedExecutor);
+    }
+
+    /**
+     * Creates a bus with the given number of lanes. Lanes that should not start a delivery pool
+     * each can share an executor through {@link EventBusImpl.Builder#executor}.
+     *
+     * @param laneCount the number of dispatcher lanes
+     * @param laneFactory creates each lane; every call must return a new bus
+     */
+    public ShardedEventBus(int laneCount, Supplier<EventBusImpl> laneFactory) {
+        this(laneCount, laneFactory, null);
+    }
+
+    private ShardedEventBus(int laneCount, Supplier<EventBusImpl> laneFactory, ExecutorService sharedExecutor) {
+        if (laneCount <= 0) {
+            throw new IllegalArgumentException("laneCount must be positive");
+        }
+        Objects.requireNonNull(laneFactory, "laneFactory cannot be null");
+        this.sharedExecutor = sharedExecutor;
+        this.lanes = new EventBusImpl[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = laneFactory.get();
+        }
+    }
+
+    private static ExecutorService newSharedExecutor(int laneCount) {
+        if (laneCount <= 0) {
+            throw new IllegalArgumentException("laneCount must be positive");
+        }
+        return Executors.newFixedThreadPool(EventBusImpl.DEFAULT_POOL_SIZE);
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Routes events of the specified type by a key instead of by their class. Events with
+     * equal keys always go to the same lane and are delivered in publish order.
+     *
+     * @param clazz the class of the event type
+     * @param keyFunction extracts the partition key, e.g. the source or account
+     */
+    public void registerPartitionKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction) {
+        Objects.requireNonNull(keyFunction, "keyFunction cannot be null");
+        partitionKeys.put(clazz, keyFunction);
+    }
+
+    /**
+     * @return the index of the lane the event is dispatched on
+     */
+    public int laneOf(BaseEvent event) {
+        Function<? super BaseEvent, ?> keyFunction = partitionKeys.get(event.getClass());
+        Object key = keyFunction != null ? keyFunction.apply(event) : event.getClass();
+        int hash = Objects.hashCode(key);
+        hash ^= hash >>> 16; // Spread the high bits, as HashMap does
+        return Math.floorMod(hash, lanes.length);
+    }
+
+    private EventBusImpl laneFor(BaseEvent event) {
+        return lanes[laneOf(event)];
+    }
+
+    @Override
+    public Subscription addSubscriber(Class<? extends BaseEvent> clazz, Consumer<BaseEvent> subscriber, SubscriberOptions options) {
+        Consumer<BaseEvent> serial = serial(subscriber, options);
+        Subscription[] subscriptions = new Subscription[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            subscriptions[i] = lanes[i].addSubscriber(clazz, serial, options.withWeakReference(false));
+        }
+        return Subscription.allOf(subscriptions);
+    }
+
+    @Override
+    public Subscription addSubscriberForFilteredEvents(Class<? extends BaseEvent> clazz, Predicate<BaseEvent> filter, Consumer<BaseEvent> subscriber, SubscriberOptions options) {
+        Consumer<BaseEvent> serial = serial(subscriber, options);
+        Subscription[] subscriptions = new Subscription[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            subscriptions[i] = lanes[i].addSubscriberForFilteredEvents(clazz, filter, serial, options.withWeakReference(false));
+        }
+        return Subscription.allOf(subscriptions);
+    }
+
+    @Override
+    public void registerSubscriptionKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction) {
+        for (EventBusImpl lane : lanes) {
+            lane.registerSubscriptionKey(clazz, keyFunction);
+        }
+    }
+
+    @Override
+    public Subscription addSubscriberForKey(Class<? extends BaseEvent> clazz, Object key, Consumer<BaseEvent> subscriber, SubscriberOptions options) {
+        Consumer<BaseEvent> serial = serial(subscriber, options);
+        Subscription[] subscriptions = new Subscription[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            subscriptions[i] = lanes[i].addSubscriberForKey(clazz, key, serial, options.withWeakReference(false));
+        }
+        return Subscription.allOf(subscriptions);
+    }
+
+    @Override
+    public Subscription addBatchSubscriber(Class<? extends BaseEvent> clazz, Consumer<List<BaseEvent>> subscriber, int maxBatchSize, long maxBatchDelayMicros, SubscriberOptions options) {
+        Consumer<List<BaseEvent>> serial = serial(subscriber, options);
+        Subscription[] subscriptions = new Subscription[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            subscriptions[i] = lanes[i].addBatchSubscriber(clazz, serial, maxBatchSize, maxBatchDelayMicros, options.withWeakReference(false));
+        }
+        return Subscription.allOf(subscriptions);
+    }
+
+    /**
+     * Wraps a subscriber once for all lanes, holding it weakly here if asked to, since the
+     * lanes hold the wrapper and would otherwise let it be collected.
+     */
+    private static <T> Consumer<T> serial(Consumer<T> subscriber, SubscriberOptions options) {
+        Objects.requireNonNull(subscriber, "subscriber cannot be null");
+        return new SerialConsumer<>(options.weakReference() ? new WeakConsumer<>(subscriber) : subscriber);
+    }
+
+    @Override
+    public void registerCoalescingKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction) {
+        for (EventBusImpl lane : lanes) {
+            lane.registerCoalescingKey(clazz, keyFunction);
+        }
+    }
+
+    @Override
+    public PublishResult publishEvent(BaseEvent event) {
+        return laneFor(event).publishEvent(event);
+    }
+
+    @Override
+    public PublishResult tryPublish(BaseEvent event) {
+        return laneFor(event).tryPublish(event);
+    }
+
+    @Override
+    public CompletionStage<PublishResult> publishAsync(BaseEvent event) {
+        return laneFor(event).publishAsync(event);
+    }
+
+    @Override
+    public int publishEvents(Collection<? extends BaseEvent> events) {
+        if (lanes.length == 1) {
+            return lanes[0].publishEvents(events);
+        }
+        // Split the batch per lane, keeping the publish order within each lane
+        List<List<BaseEvent>> perLane = new ArrayList<>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            perLane.add(new ArrayList<>());
+        }
+        for (BaseEvent event : events) {
+            perLane.get(laneOf(event)).add(event);
+        }
+        int accepted = 0;
+        for (int i = 0; i < lanes.length; i++) {
+            if (!perLane.get(i).isEmpty()) {
+                accepted += lanes[i].publishEvents(perLane.get(i));
+            }
+        }
+        return accepted;
+    }
+
+    @Override
+    public int publishEvents(BaseEvent... events) {
+        return publishEvents(Arrays.asList(events));
+    }
+
+    /**
+     * Stops every lane from accepting events first, then drains the lanes one after another
+     * against the same deadline. The lanes keep dispatching in parallel meanwhile.
+     *
+     * @return the number of accepted events that were never delivered, over all lanes
+     */
+    @Override
+    public int shutdown(Duration drainDeadline) {
+        for (EventBusImpl lane : lanes) {
+            lane.stopAccepting();
+        }
+        long deadline = System.nanoTime() + drainDeadline.toNanos();
+        int undelivered = 0;
+        for (EventBusImpl lane : lanes) {
+            undelivered += lane.shutdown(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+        }
+        if (sharedExecutor != null) {
+            sharedExecutor.shutdown();
+            try {
+                sharedExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // Restore interrupted status
+            }
+            if (!sharedExecutor.isTerminated()) {
+                sharedExecutor.shutdownNow(); // Interrupt subscribers that are still running
+            }
+        }
+        return undelivered;
+    }
+}
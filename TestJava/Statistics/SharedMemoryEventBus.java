@@ -0,0 +1,279 @@
+package Statistics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Event bus that carries events between processes on the same host through a
+ * memory-mapped ring file.
+ * <p>
+ * One process opens the ring as the {@linkplain #writer writer} and publishes; any number
+ * of processes open it as {@linkplain #reader readers}. A reader polls the ring on its own
+ * thread and hands every event to a local {@link EventBusImpl}, which is where its
+ * subscribers are registered, so subscribing works as on any other bus. Subscribers
+ * registered on the writer receive its events directly.
+ * <p>
+ * The writer never waits for readers: a reader that falls a lap behind skips to the
+ * newest events and counts what it missed in {@link #lostEvents()}.
+ */
+public class SharedMemoryEventBus implements EventBus {
+    public static final int DEFAULT_RING_CAPACITY = 16 * 1024 * 1024;
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final SharedMemoryRing ring;
+    private final EventCodec codec;
+    private final EventBusImpl localBus; // Delivers to the subscribers in this process
+    private final Thread readerThread;   // Null on the writer
+    private volatile boolean hasLocalSubscribers;
+    private volatile boolean closed;
+    private volatile long lostEvents;
+    private volatile long undeliverableEvents; // Written by the reader thread only
+
+    private SharedMemoryEventBus(SharedMemoryRing ring, EventCodec codec, EventBusImpl localBus, boolean reader) {
+        this.ring = ring;
+        this.codec = codec;
+        this.localBus = localBus;
+        if (reader) {
+            SharedMemoryRing.Cursor cursor = ring.tail(); // Late joiners start with the next event
+            this.readerThread = new Thread(() -> readEvents(cursor), "shared-memory-event-reader");
+            readerThread.setDaemon(true);
+            readerThread.start();
+        } else {
+            this.readerThread = null;
+        }
+    }
+
+    public static SharedMemoryEventBus writer(Path file, EventCodec codec) throws IOException {
+        return writer(file, DEFAULT_RING_CAPACITY, codec, EventBusImpl.builder().dispatchMode(DispatchMode.RING).build());
+    }
+
+    /**
+     * Opens the ring file for publishing, creating it if needed.
+     *
+     * @param file the ring file, e.g. under {@code /dev/shm}
+     * @param capacity size of the ring in bytes, a multiple of 8; a single encoded event may use up to an eighth of it
+     * @param codec turns events into bytes
+     * @param localBus delivers to subscribers registered on the writer
+     * @throws IllegalStateException if another bus is already writing to the file
+     */
+    public static SharedMemoryEventBus writer(Path file, int capacity, EventCodec codec, EventBusImpl localBus) throws IOException {
+        Objects.requireNonNull(codec, "codec cannot be null");
+        Objects.requireNonNull(localBus, "localBus cannot be null");
+        return new SharedMemoryEventBus(SharedMemoryRing.openWriter(file, capacity), codec, localBus, false);
+    }
+
+    public static SharedMemoryEventBus reader(Path file, EventCodec codec) throws IOException {
+        return reader(file, codec, EventBusImpl.builder().dispatchMode(DispatchMode.RING).build());
+    }
+
+    /**
+     * Opens a ring file created by a writer and starts delivering the events published from now on.
+     *
+     * @param file the ring file
+     * @param codec turns bytes back into events
+     * @param localBus delivers to subscribers registered on this reader
+     */
+    public static SharedMemoryEventBus reader(Path file, EventCodec codec, EventBusImpl localBus) throws IOException {
+        Objects.requireNonNull(codec, "codec cannot be null");
+        Objects.requireNonNull(localBus, "localBus cannot be null");
+        return new SharedMemoryEventBus(SharedMemoryRing.openReader(file), codec, localBus, true);
+    }
+
+    /**
+     * @return the number of events this reader skipped because the writer had overwritten them; always 0 on the writer
+     */
+    public long lostEvents() {
+        return lostEvents;
+    }
+
+    /**
+     * @return the number of events this reader received but could not decode or hand to its
+     *         local bus; always 0 on the writer
+     */
+    public long undeliverableEvents() {
+        return undeliverableEvents;
+    }
+
+    private void readEvents(SharedMemoryRing.Cursor cursor) {
+        int tries = 0;
+        long failedPublishes = 0;
+        while (!closed) {
+            BaseEvent event = cursor.poll(codec); // Skips and counts records it cannot decode
+            lostEvents = cursor.lost();
+            undeliverableEvents = cursor.undecodable() + failedPublishes;
+            if (event == null) {
+                tries = backOff(tries);
+                continue;
+            }
+            tries = 0;
+            try {
+                localBus.publishEvent(event);
+            } catch (RuntimeException e) {
+                // One bad event must not stop this reader for good
+                undeliverableEvents = cursor.undecodable() + ++failedPublishes;
+                System.err.println("Error delivering event from shared memory ring: " + e.getMessage());
+            }
+        }
+    }
+
+    private static int backOff(int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return tries < SPIN_TRIES + YIELD_TRIES ? tries + 1 : tries;
+    }
+
+    @Override
+    public Subscription addSubscriber(Class<? extends BaseEvent> clazz, Consumer<BaseEvent> subscriber, SubscriberOptions options) {
+        Subscription subscription = localBus.addSubscriber(clazz, subscriber, options);
+        hasLocalSubscribers = true;
+        return subscription;
+    }
+
+    @Override
+    public Subscription addSubscriberForFilteredEvents(Class<? extends BaseEvent> clazz, Predicate<BaseEvent> filter, Consumer<BaseEvent> subscriber, SubscriberOptions options) {
+        Subscription subscription = localBus.addSubscriberForFilteredEvents(clazz, filter, subscriber, options);
+        hasLocalSubscribers = true;
+        return subscription;
+    }
+
+    @Override
+    public void registerSubscriptionKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction) {
+        localBus.registerSubscriptionKey(clazz, keyFunction);
+    }
+
+    @Override
+    public Subscription addSubscriberForKey(Class<? extends BaseEvent> clazz, Object key, Consumer<BaseEvent> subscriber, SubscriberOptions options) {
+        Subscription subscription = localBus.addSubscriberForKey(clazz, key, subscriber, options);
+        hasLocalSubscribers = true;
+        return subscription;
+    }
+
+    @Override
+    public Subscription addBatchSubscriber(Class<? extends BaseEvent> clazz, Consumer<List<BaseEvent>> subscriber, int maxBatchSize, long maxBatchDelayMicros, SubscriberOptions options) {
+        Subscription subscription = localBus.addBatchSubscriber(clazz, subscriber, maxBatchSize, maxBatchDelayMicros, options);
+        hasLocalSubscribers = true;
+        return subscription;
+    }
+
+    /**
+     * Conflation only applies to delivery within this process; every event still goes through the ring.
+     */
+    @Override
+    public void registerCoalescingKey(Class<? extends BaseEvent> clazz, Function<? super BaseEvent, ?> keyFunction) {
+        localBus.registerCoalescingKey(clazz, keyFunction);
+    }
+
+    /**
+     * Writes the event to the ring, then delivers it to the writer's own subscribers.
+     * A reader cannot publish and rejects every event.
+     */
+    @Override
+    public PublishResult publishEvent(BaseEvent event) {
+        PublishResult refused = appendToRing(event);
+        if (refused != null) {
+            return refused;
+        }
+        return hasLocalSubscribers ? localBus.publishEvent(event) : PublishResult.ACCEPTED;
+    }
+
+    /**
+     * Like {@link #publishEvent}, but refuses instead of waiting for room in the local bus.
+     */
+    @Override
+    public PublishResult tryPublish(BaseEvent event) {
+        PublishResult refused = appendToRing(event);
+        if (refused != null) {
+            return refused;
+        }
+        return hasLocalSubscribers ? localBus.tryPublish(event) : PublishResult.ACCEPTED; // Writing to the ring never waits
+    }
+
+    @Override
+    public CompletionStage<PublishResult> publishAsync(BaseEvent event) {
+        PublishResult refused = appendToRing(event);
+        if (refused != null) {
+            return CompletableFuture.completedFuture(refused);
+        }
+        return hasLocalSubscribers ? localBus.publishAsync(event) : CompletableFuture.completedFuture(PublishResult.ACCEPTED);
+    }
+
+    /**
+     * @return why the event cannot be published, or null once it is in the ring
+     */
+    private PublishResult appendToRing(BaseEvent event) {
+        if (readerThread != null) {
+            return PublishResult.REJECTED; // Only the writer publishes to the ring
+        }
+        if (closed) {
+            return PublishResult.CLOSED;
+        }
+        synchronized (ring) {
+            ring.append(codec, event);
+        }
+        return null;
+    }
+
+    @Override
+    public int publishEvents(Collection<? extends BaseEvent> events) {
+        int accepted = 0;
+        for (BaseEvent event : events) {
+            if (publishEvent(event).isAccepted()) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    @Override
+    public int publishEvents(BaseEvent... events) {
+        return publishEvents(Arrays.asList(events));
+    }
+
+    /**
+     * Stops reading from the ring, drains the local bus and unmaps the ring file. The file itself
+     * stays in place for other processes.
+     */
+    @Override
+    public int shutdown(Duration drainDeadline) {
+        if (closed) {
+            return 0;
+        }
+        closed = true;
+        long deadline = System.nanoTime() + drainDeadline.toNanos();
+        if (readerThread != null) {
+            try {
+                readerThread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // Restore interrupted status
+            }
+        }
+        int undelivered = localBus.shutdown(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+        try {
+            synchronized (ring) {
+                ring.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing event ring: " + e.getMessage());
+        }
+        return undelivered;
+    }
+}
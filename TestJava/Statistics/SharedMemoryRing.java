@@ -0,0 +1,303 @@
+package Statistics;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Single-writer, multi-reader broadcast ring in a memory-mapped file, shared between
+ * processes on the same host.
+ * <p>
+ * The file starts with a header holding the ring capacity and two byte cursors, each on
+ * its own cache line: the claim cursor, which the writer advances before it overwrites
+ * any bytes, and the publish cursor, which it advances once a record is complete. Both
+ * only ever grow; the byte at cursor {@code c} lives at {@code c % capacity} of the data
+ * area. Records are {@code [int length][int payload length][long sequence][payload]},
+ * padded to 8 bytes, and a negative length skips the rest of the data area.
+ * <p>
+ * Readers never hold the writer back. Each reader keeps its own position, and after
+ * reading a record checks against the claim cursor that the writer has not started
+ * overwriting it in the meantime; a reader that has been lapped skips ahead and counts
+ * the events it lost. Writing and reading are plain memory accesses ordered by
+ * release/acquire on the cursors, with no system call per event.
+ */
+class SharedMemoryRing implements AutoCloseable {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static final int MAGIC = 0x45564252; // "EVBR"
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int CLAIM_OFFSET = 64;
+    private static final int PUBLISH_OFFSET = 128;
+    private static final int SEQUENCE_OFFSET = 136; // Next sequence, updated together with the publish cursor
+    private static final int DATA_OFFSET = 192;
+    private static final int RECORD_HEADER = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int ALIGNMENT = 8;
+    static final int MIN_CAPACITY = 1024;
+
+    private final FileChannel channel;
+    private final FileLock writerLock; // Null for readers
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int maxRecordSize;
+    private long nextSequence; // Writer only
+
+    private SharedMemoryRing(FileChannel channel, FileLock writerLock, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.writerLock = writerLock;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.maxRecordSize = capacity / 8; // A write may invalidate up to two records' worth of bytes ahead of the cursor
+    }
+
+    /**
+     * Opens the ring for writing, creating the file if needed. Only one process may write at a time;
+     * a writer reopening an existing ring of the same capacity continues after its last record.
+     *
+     * @param capacity size of the data area in bytes, a multiple of 8 and at least {@link #MIN_CAPACITY}
+     */
+    static SharedMemoryRing openWriter(Path file, int capacity) throws IOException {
+        if (capacity < MIN_CAPACITY || capacity % ALIGNMENT != 0) {
+            throw new IllegalArgumentException("capacity must be a multiple of " + ALIGNMENT + " and at least " + MIN_CAPACITY);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock(0, DATA_OFFSET, false);
+        } catch (OverlappingFileLockException e) {
+            lock = null; // Already held by this JVM
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException("Another process is already writing to " + file);
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) DATA_OFFSET + capacity);
+        SharedMemoryRing ring = new SharedMemoryRing(channel, lock, buffer, capacity);
+        if ((int) INTS.getAcquire(buffer, MAGIC_OFFSET) == MAGIC && buffer.getInt(CAPACITY_OFFSET) == capacity) {
+            ring.nextSequence = buffer.getLong(SEQUENCE_OFFSET);
+        } else {
+            INTS.setRelease(buffer, MAGIC_OFFSET, 0); // Readers must not attach to a half-initialised ring
+            LONGS.setRelease(buffer, CLAIM_OFFSET, 0L);
+            LONGS.setRelease(buffer, PUBLISH_OFFSET, 0L);
+            buffer.putLong(SEQUENCE_OFFSET, 0L);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            INTS.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+        }
+        return ring;
+    }
+
+    /**
+     * Opens an existing ring for reading.
+     *
+     * @throws IllegalStateException if the file has not been initialised by a writer
+     */
+    static SharedMemoryRing openReader(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, DATA_OFFSET);
+            if ((int) INTS.getAcquire(header, MAGIC_OFFSET) != MAGIC) {
+                throw new IllegalStateException(file + " is not an initialised event ring");
+            }
+            int capacity = header.getInt(CAPACITY_OFFSET);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) DATA_OFFSET + capacity);
+            return new SharedMemoryRing(channel, null, buffer, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private int index(long position) {
+        return DATA_OFFSET + (int) (position % capacity);
+    }
+
+    /**
+     * Writes an event. Must only be called by one thread at a time.
+     *
+     * @return the sequence number of the event
+     * @throws IllegalArgumentException if the encoded event is larger than an eighth of the ring
+     * @throws IllegalStateException if the ring was opened for reading
+     */
+    long append(EventCodec codec, BaseEvent event) {
+        if (writerLock == null) {
+            throw new IllegalStateException("Ring was opened for reading");
+        }
+        long position = (long) LONGS.getOpaque(buffer, PUBLISH_OFFSET);
+        LONGS.setRelease(buffer, CLAIM_OFFSET, position + 2L * maxRecordSize);
+        VarHandle.storeStoreFence(); // Readers that see overwritten bytes also see the claim
+
+        int index = index(position);
+        int toEnd = DATA_OFFSET + capacity - index;
+        int length = tryEncode(codec, event, index, Math.min(toEnd, maxRecordSize));
+        if (length < 0) {
+            if (toEnd >= maxRecordSize) {
+                throw new IllegalArgumentException("Event does not fit in " + maxRecordSize + " bytes");
+            }
+            buffer.putInt(index, -toEnd); // Skip to the start of the data area
+            position += toEnd;
+            index = DATA_OFFSET;
+            length = tryEncode(codec, event, index, maxRecordSize);
+            if (length < 0) {
+                throw new IllegalArgumentException("Event does not fit in " + maxRecordSize + " bytes");
+            }
+        }
+        long sequence = nextSequence++;
+        buffer.putLong(index + Integer.BYTES + Integer.BYTES, sequence);
+        buffer.putInt(index, length);
+        buffer.putLong(SEQUENCE_OFFSET, nextSequence);
+        LONGS.setRelease(buffer, PUBLISH_OFFSET, position + length);
+        return sequence;
+    }
+
+    /**
+     * @return the padded record length, or -1 if the event does not fit
+     */
+    private int tryEncode(EventCodec codec, BaseEvent event, int index, int room) {
+        if (room < RECORD_HEADER) {
+            return -1;
+        }
+        ByteBuffer target = buffer.duplicate().limit(index + room).position(index + RECORD_HEADER);
+        try {
+            codec.encode(event, target);
+        } catch (BufferOverflowException e) {
+            return -1;
+        }
+        int payloadLength = target.position() - index - RECORD_HEADER;
+        int length = (RECORD_HEADER + payloadLength + ALIGNMENT - 1) & -ALIGNMENT;
+        if (length > room) {
+            return -1; // The padding would run past the end of the data area
+        }
+        buffer.putInt(index + Integer.BYTES, payloadLength);
+        return length;
+    }
+
+    /**
+     * @return a cursor positioned after the last published record
+     */
+    Cursor tail() {
+        long position = (long) LONGS.getAcquire(buffer, PUBLISH_OFFSET);
+        // Read after the publish cursor, so it is never behind the record at that position; a
+        // value that is ahead only means no loss is counted for the first record.
+        long nextSequence = buffer.getLong(SEQUENCE_OFFSET);
+        return new Cursor(position, nextSequence);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writerLock != null) {
+            writerLock.release();
+        }
+        channel.close();
+    }
+
+    /**
+     * A reader's position in the ring. Not thread-safe; each reading thread needs its own.
+     */
+    class Cursor {
+        private long position;
+        private long expectedSequence;
+        private long lost;
+        private long undecodable;
+
+        private Cursor(long position, long expectedSequence) {
+            this.position = position;
+            this.expectedSequence = expectedSequence;
+        }
+
+        /**
+         * Skips records that cannot be decoded, counting them in {@link #undecodable()}.
+         *
+         * @return the next event, or null if the reader has caught up with the writer
+         */
+        BaseEvent poll(EventCodec codec) {
+            while (true) {
+                long published = (long) LONGS.getAcquire(buffer, PUBLISH_OFFSET);
+                if (position >= published) {
+                    return null;
+                }
+                int index = index(position);
+                int length = buffer.getInt(index);
+                if (length < 0) {
+                    if (!isOverwritten()) {
+                        position += -length;
+                    }
+                    continue;
+                }
+                BaseEvent event = null;
+                long sequence = 0;
+                if (length >= RECORD_HEADER && length <= maxRecordSize) {
+                    int payloadLength = buffer.getInt(index + Integer.BYTES);
+                    sequence = buffer.getLong(index + Integer.BYTES + Integer.BYTES);
+                    if (payloadLength >= 0 && RECORD_HEADER + payloadLength <= length) {
+                        try {
+                            ByteBuffer source = buffer.duplicate()
+                                    .limit(index + RECORD_HEADER + payloadLength).position(index + RECORD_HEADER);
+                            event = codec.decode(source);
+                        } catch (RuntimeException e) {
+                            event = null; // Torn by the writer, checked below
+                        }
+                    }
+                }
+                if (isOverwritten()) {
+                    continue; // Whatever was read may be torn
+                }
+                if (event == null) {
+                    undecodable++; // Corrupt, or the codec cannot read it
+                    if (length >= RECORD_HEADER && length <= maxRecordSize) {
+                        expectedSequence = sequence + 1;
+                        position += length;
+                    } else {
+                        position = published; // The next record cannot be found; rejoin at the newest
+                    }
+                    continue;
+                }
+                if (sequence > expectedSequence) {
+                    lost += sequence - expectedSequence;
+                }
+                expectedSequence = sequence + 1;
+                position += length;
+                return event;
+            }
+        }
+
+        /**
+         * Moves a lapped reader to the newest data if the writer may have overwritten its position.
+         */
+        private boolean isOverwritten() {
+            VarHandle.loadLoadFence(); // Read the claim after the record bytes
+            long claimed = (long) LONGS.getAcquire(buffer, CLAIM_OFFSET);
+            if (claimed - capacity <= position) {
+                return false;
+            }
+            position = (long) LONGS.getAcquire(buffer, PUBLISH_OFFSET);
+            return true;
+        }
+
+        /**
+         * @return the number of events this reader missed because the writer lapped it
+         */
+        long lost() {
+            return lost;
+        }
+
+        /**
+         * @return the number of records this reader skipped because they could not be decoded
+         */
+        long undecodable() {
+            return undecodable;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package Statistics;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-length integers for the serialized forms of the {@link QuantileSketch} kinds:
+ * seven bits per byte, small magnitudes first, so counts and index deltas mostly take a
+ * single byte.
+ */
+final class SketchEncoding {
+    private SketchEncoding() {
+    }
+
+    static void putVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Writes a signed value so that small negative values are as short as small positive ones.
+     */
+    static void putZigZag(ByteArrayOutputStream out, long value) {
+        putVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static void putDouble(ByteArrayOutputStream out, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (bits >>> shift));
+        }
+    }
+
+    static long getVarLong(ByteBuffer source) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte next = source.get();
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length integer");
+    }
+
+    static long getZigZag(ByteBuffer source) {
+        long encoded = getVarLong(source);
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    static double getDouble(ByteBuffer source) {
+        long bits = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            bits = bits << 8 | (source.get() & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * @return a non-negative length read from the source
+     * @throws IllegalArgumentException if the length is implausibly large
+     */
+    static int getLength(ByteBuffer source, int max) {
+        long length = getVarLong(source);
+        if (length < 0 || length > max) {
+            throw new IllegalArgumentException("Malformed sketch: length " + length);
+        }
+        return (int) length;
+    }
+}
@@ -0,0 +1,54 @@
+package Statistics;
+
+import java.util.HashMap;
+
+/**
+ * Statistics of a window whose distribution is summarised by a {@link QuantileSketch}.
+ * The mean is exact; percentiles, the mode and the histogram are the sketch's estimates.
+ *
+ * @param sketch the measurements of the window; must not be modified
+ * @param count the number of measurements
+ * @param sum the exact sum of the measurements
+ */
+public record SketchStatistics(QuantileSketch sketch, long count, long sum) implements SlidingWindowStatistics.Statistics, BaseEvent {
+    @Override
+    public boolean isCoalescing() {
+        return true;
+    }
+
+    @Override
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @return the retained value that stands for the most measurements, rounded to an int
+     */
+    @Override
+    public int getMode() {
+        double[] mode = new double[1];
+        long[] maxWeight = new long[1];
+        sketch.forEach((value, weight) -> {
+            if (weight > maxWeight[0]) {
+                maxWeight[0] = weight;
+                mode[0] = value;
+            }
+        });
+        return (int) Math.round(mode[0]);
+    }
+
+    @Override
+    public double getPctile(int pctile) {
+        return sketch.count() == 0 ? 0 : sketch.quantile(pctile / 100.0);
+    }
+
+    /**
+     * Compatibility view of the retained values, rounded to ints, with the measurements they stand for.
+     */
+    @Override
+    public HashMap<Integer, Integer> histogram() {
+        HashMap<Integer, Integer> histogram = new HashMap<>();
+        sketch.forEach((value, weight) -> histogram.merge((int) Math.round(value), (int) Math.min(weight, Integer.MAX_VALUE), Integer::sum));
+        return histogram;
+    }
+}
@@ -7,7 +7,10 @@ import java.util.function.Predicate;
 public interface SlidingWindowStatistics {
     void add(int measurement);
 
-     void subscribeForStatistics(Predicate<Statistics> filter, Consumer<Statistics> subscriber);
+    /**
+     * @return a handle that stops delivery of statistics to the subscriber when cancelled
+     */
+    Subscription subscribeForStatistics(Predicate<Statistics> filter, Consumer<Statistics> subscriber);
 
     Statistics getLatestStatistics();
 
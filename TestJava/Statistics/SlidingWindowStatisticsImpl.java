@@ -1,85 +1,259 @@
 package Statistics;
 
-import org.jetbrains.annotations.NotNull;
-
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
-public class SlidingWindowStatisticsImpl implements SlidingWindowStatistics {
+public final class SlidingWindowStatisticsImpl implements SlidingWindowStatistics {
+    public static final Duration DEFAULT_WINDOW_LENGTH = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_RESOLUTION = Duration.ofMillis(10); // Width of one time bucket
     private final EventBus eventBus; // Use the EventBus interface
-    private final LockFreeRingBuffer<Measurement> measurements; // Use LockFreeRingBuffer<Measurement>
+    private final IntLongRingBuffer measurements; // Values and timestamps in primitive arrays, so add() allocates nothing
+    private final StripedRecorder stripes; // Null unless every producer thread records into a stripe of its own
+    private final WindowAggregates aggregates; // Running count, sum and histogram, the only consumer of measurements
     private final Throttler throttler; // Use the Throttler interface
     private final ScheduledExecutorService scheduler;
     private final AtomicBoolean hasNewMeasurements = new AtomicBoolean(false); // Flag to track new measurements
+    private final WaitStrategy publishWait; // Null when statistics are published on a fixed schedule
+    private volatile boolean running = true;
 
     // Constructor with dependency injection
     public SlidingWindowStatisticsImpl(EventBus eventBus, Throttler throttler, int ringBufferCapacity) {
+        this(eventBus, throttler, new IntLongRingBuffer(ringBufferCapacity)); // Set a capacity for the ring buffer
+    }
+
+    /**
+     * Creates a window over the given measurements, which may already hold some, e.g. from a ring
+     * re-attached with {@link IntLongRingBuffer#openMapped}. The window takes ownership of the ring
+     * and closes it on {@link #shutdown()}.
+     */
+    public SlidingWindowStatisticsImpl(EventBus eventBus, Throttler throttler, IntLongRingBuffer measurements) {
+        this(eventBus, throttler, measurements, DEFAULT_WINDOW_LENGTH, DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * Creates a window of the given length, made of time buckets as wide as the resolution; a one second
+     * window with a 10 millisecond resolution keeps 100 buckets. Measurements leave the window a whole
+     * bucket at a time, so they stay in it for between {@code windowLength - resolution} and
+     * {@code windowLength}.
+     * <p>
+     * The ring only holds measurements until they are counted into their buckets, so its capacity bounds
+     * the measurements taken between two updates rather than those in the window, except for a ring
+     * mapped from a file, which keeps every measurement of the window.
+     *
+     * @throws IllegalArgumentException unless the window length is a positive multiple of the resolution
+     */
+    public SlidingWindowStatisticsImpl(EventBus eventBus, Throttler throttler, IntLongRingBuffer measurements,
+                                       Duration windowLength, Duration resolution) {
+        this(eventBus, throttler, measurements, windowLength, resolution, null);
+    }
+
+    /**
+     * Creates a window whose percentiles are estimated by a quantile sketch instead of counted in an exact
+     * histogram, e.g. {@code QuantileSketch.ddSketch(0.01)}. Each time bucket keeps a copy of the sketch and
+     * the statistics merge those of the buckets in the window, which keeps the footprint small for values
+     * that span a huge range.
+     *
+     * @param quantileEngine an empty sketch of the kind and parameters to use; null for the exact histogram
+     */
+    public SlidingWindowStatisticsImpl(EventBus eventBus, Throttler throttler, IntLongRingBuffer measurements,
+                                       Duration windowLength, Duration resolution, QuantileSketch quantileEngine) {
         this.eventBus = eventBus; // Injected EventBus
-        this.measurements = new LockFreeRingBuffer<>(ringBufferCapacity); // Set a capacity for the ring buffer
+        this.measurements = Objects.requireNonNull(measurements, "measurements cannot be null");
+        this.stripes = null;
+        this.aggregates = new WindowAggregates(measurements, windowLength, resolution, quantileEngine);
         this.throttler = throttler; // Injected Throttler
+        this.publishWait = null;
         this.scheduler = Executors.newScheduledThreadPool(1);
+        hasNewMeasurements.set(measurements.size() > 0); // Publish what survived a restart right away
 
         // Schedule the task to run every 10 milliseconds
         scheduler.scheduleAtFixedRate(this::publishStatistics, 0, 10, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Creates a window whose measurements are kept in a memory-mapped file, so that a restarted
+     * service resumes with the measurements of the last second instead of an empty window.
+     * Measurements that have left the window while the service was down are discarded on opening.
+     *
+     * @param file the measurement file, created if it does not exist
+     * @throws IllegalStateException if another window already has the file open
+     */
+    public static SlidingWindowStatisticsImpl persistent(EventBus eventBus, Throttler throttler, Path file, int ringBufferCapacity) throws IOException {
+        return persistent(eventBus, throttler, file, ringBufferCapacity, DEFAULT_WINDOW_LENGTH, DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * Like {@link #persistent(EventBus, Throttler, Path, int)} for a window of the given length and resolution.
+     * The file keeps every measurement in the window, so the ring needs room for all of them.
+     */
+    public static SlidingWindowStatisticsImpl persistent(EventBus eventBus, Throttler throttler, Path file, int ringBufferCapacity,
+                                                         Duration windowLength, Duration resolution) throws IOException {
+        long cutoff = System.currentTimeMillis() - windowLength.toMillis();
+        IntLongRingBuffer measurements = IntLongRingBuffer.openMapped(file, ringBufferCapacity, cutoff);
+        try {
+            return new SlidingWindowStatisticsImpl(eventBus, throttler, measurements, windowLength, resolution);
+        } catch (RuntimeException e) {
+            measurements.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a window that publishes statistics as soon as new measurements arrive instead of every
+     * 10 milliseconds. The wait strategy decides how the publishing thread waits for them: spinning
+     * reacts within microseconds, parking costs nothing while no measurements arrive.
+     */
+    public SlidingWindowStatisticsImpl(EventBus eventBus, Throttler throttler, int ringBufferCapacity, WaitStrategy waitStrategy) {
+        this.eventBus = eventBus;
+        this.measurements = new IntLongRingBuffer(ringBufferCapacity);
+        this.stripes = null;
+        this.aggregates = new WindowAggregates(measurements, DEFAULT_WINDOW_LENGTH, DEFAULT_RESOLUTION);
+        this.throttler = throttler;
+        this.publishWait = Objects.requireNonNull(waitStrategy, "waitStrategy cannot be null");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.execute(this::publishOnNewMeasurements);
+    }
+
+    /**
+     * Creates a window that is only read through {@link #getLatestStatistics()}: measurements are not throttled
+     * and nothing is published, so no scheduler thread is started.
+     */
+    public SlidingWindowStatisticsImpl(int ringBufferCapacity) {
+        this(ringBufferCapacity, DEFAULT_WINDOW_LENGTH, DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * Creates a pull-only window of the given length and resolution.
+     *
+     * @throws IllegalArgumentException unless the window length is a positive multiple of the resolution
+     */
+    public SlidingWindowStatisticsImpl(int ringBufferCapacity, Duration windowLength, Duration resolution) {
+        this(ringBufferCapacity, windowLength, resolution, null);
+    }
+
+    /**
+     * Creates a pull-only window whose percentiles are estimated by copies of the given sketch.
+     *
+     * @param quantileEngine an empty sketch of the kind and parameters to use; null for the exact histogram
+     */
+    public SlidingWindowStatisticsImpl(int ringBufferCapacity, Duration windowLength, Duration resolution, QuantileSketch quantileEngine) {
+        this.eventBus = null;
+        this.measurements = new IntLongRingBuffer(ringBufferCapacity);
+        this.stripes = null;
+        this.aggregates = new WindowAggregates(measurements, windowLength, resolution, quantileEngine);
+        this.throttler = null;
+        this.publishWait = null;
+        this.scheduler = null;
+    }
+
+    /**
+     * Creates a pull-only window that scales with the number of producer threads: each of them records
+     * into a stripe of its own, which {@link #getLatestStatistics()} merges into the window. Adding a
+     * measurement then costs a few stores to memory no other producer writes, instead of a claim on a
+     * head shared by all producers.
+     *
+     * @param stripeCapacity measurements each thread can record between two reads of the statistics;
+     *                       a thread whose stripe is full merges the stripes itself
+     */
+    public static SlidingWindowStatisticsImpl striped(int stripeCapacity) {
+        return new SlidingWindowStatisticsImpl(null, new StripedRecorder(stripeCapacity), DEFAULT_WINDOW_LENGTH, DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * Creates a striped window that publishes its statistics every 10 milliseconds, merging the stripes
+     * each time. Measurements are not throttled, since a throttler shared by every producer would bring
+     * back the contention the stripes avoid.
+     *
+     * @throws IllegalArgumentException unless the window length is a positive multiple of the resolution
+     */
+    public static SlidingWindowStatisticsImpl striped(EventBus eventBus, int stripeCapacity, Duration windowLength, Duration resolution) {
+        Objects.requireNonNull(eventBus, "eventBus cannot be null");
+        return new SlidingWindowStatisticsImpl(eventBus, new StripedRecorder(stripeCapacity), windowLength, resolution);
+    }
+
+    private SlidingWindowStatisticsImpl(EventBus eventBus, StripedRecorder stripes, Duration windowLength, Duration resolution) {
+        this.eventBus = eventBus; // Null for a pull-only window
+        this.measurements = null;
+        this.stripes = stripes;
+        this.aggregates = new WindowAggregates(stripes, windowLength, resolution, null);
+        this.throttler = null;
+        this.publishWait = null;
+        this.scheduler = eventBus == null ? null : Executors.newScheduledThreadPool(1);
+        if (scheduler != null) {
+            scheduler.scheduleAtFixedRate(this::publishStatistics, 0, 10, TimeUnit.MILLISECONDS);
+        }
+    }
+
     @Override
     public void add(int measurement) {
-        if (throttler.shouldProceed() == ThrottleResult.PROCEED) {
+        if (throttler == null || throttler.shouldProceed() == ThrottleResult.PROCEED) {
             long currentTime = System.currentTimeMillis();
 
             // Add the new measurement with the current timestamp
-            if (measurements.add(new Measurement(measurement, currentTime))) {
-                hasNewMeasurements.set(true);
+            boolean added = record(measurement, currentTime);
+            if (!added) {
+                // Make room by counting the measurements into their buckets now
+                cleanupOldMeasurements(currentTime);
+                added = record(measurement, currentTime);
+            }
+            if (added) {
+                if (!hasNewMeasurements.get()) { // Read first, so producers do not keep taking the flag's cache line from each other
+                    hasNewMeasurements.set(true);
+                }
+                if (publishWait != null) {
+                    publishWait.signal();
+                }
             }
         }
     }
 
+    private boolean record(int measurement, long currentTime) {
+        return stripes != null ? stripes.record(measurement, currentTime) : measurements.add(measurement, currentTime);
+    }
+
     private void publishStatistics() {
-        if (hasNewMeasurements.get()) { // Only publish if there are new measurements
+        // Only publish if there are new measurements. The flag is taken before the snapshot, so a
+        // measurement added while publishing sets it again and is published next time.
+        if (hasNewMeasurements.getAndSet(false)) {
             try {
                 // Publish the updated statistics
                 eventBus.publishEvent(getLatestStatistics());
             } catch (Exception e) {
                 System.err.println("Error publishing statistics: " + e.getMessage());
-            } finally {
-                hasNewMeasurements.set(false);
             }
         }
     }
 
-    private void cleanupOldMeasurements(long currentTime) {
-        // Use the iterator to go through the measurements
-        for (Measurement measurement : measurements) {
-            if (measurement != null && currentTime - measurement.timestamp > 1000) {
-                // If the measurement is older than 1 second, advance the tail
-                measurements.advanceTail();
-            } else {
-                break; // Stop if we find a valid measurement
+    private void publishOnNewMeasurements() {
+        BooleanSupplier wakeUp = () -> hasNewMeasurements.get() || !running;
+        try {
+            while (running) {
+                publishWait.await(wakeUp, Long.MAX_VALUE);
+                if (running) {
+                    publishStatistics();
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore interrupted status
         }
     }
 
-    private @NotNull HashMap<Integer, Integer> getCurrentHistogram() {
-        HashMap<Integer, Integer> histogram = new HashMap<>();
-
-        // Use the iterator to go through the measurements
-        for (Measurement measurement : measurements) {
-            if (measurement != null) { // Check for null to avoid NullPointerException
-                // Update the histogram with the current measurement
-                histogram.merge(measurement.value, 1, Integer::sum);
-            }
-        }
-        return histogram;
+    private void cleanupOldMeasurements(long currentTime) {
+        // Count the new measurements and drop the buckets that have left the window
+        aggregates.update(currentTime);
     }
 
     @Override
-    public void subscribeForStatistics(Predicate<Statistics> filter, Consumer<Statistics> subscriber) {
+    public Subscription subscribeForStatistics(Predicate<Statistics> filter, Consumer<Statistics> subscriber) {
         // Create a Predicate<BaseEvent> that casts the event to Statistics
         Predicate<BaseEvent> eventFilter = event -> event instanceof Statistics && filter.test((Statistics) event);
 
@@ -90,8 +264,12 @@ public class SlidingWindowStatisticsImpl implements SlidingWindowStatistics {
             }
         };
 
+        if (eventBus == null) {
+            throw new IllegalStateException("This window has no event bus to publish statistics on");
+        }
+
         // Add the subscriber for filtered events
-        eventBus.addSubscriberForFilteredEvents(StatisticsImpl.class,
+        return eventBus.addSubscriberForFilteredEvents(Statistics.class,
                 eventFilter,
                 eventSubscriber);
     }
@@ -99,15 +277,19 @@ public class SlidingWindowStatisticsImpl implements SlidingWindowStatistics {
     @Override
     public Statistics getLatestStatistics() {
         long currentTime = System.currentTimeMillis();
-        cleanupOldMeasurements(currentTime);
-        HashMap<Integer, Integer> histogram = getCurrentHistogram();
-        return new StatisticsImpl(histogram);
-    }
-
-    private record Measurement(int value, long timestamp) {
+        // Costs one pass over the distinct values in the window, however many measurements it holds
+        return aggregates.snapshot(currentTime);
     }
 
     public void shutdown() {
+        if (scheduler == null) {
+            closeMeasurements(); // Pull-only window
+            return;
+        }
+        running = false;
+        if (publishWait != null) {
+            publishWait.signal(); // Wake the publishing thread so that it can stop
+        }
         scheduler.shutdown(); // Stop accepting new tasks
         try {
             // Wait for existing tasks to terminate
@@ -118,5 +300,17 @@ public class SlidingWindowStatisticsImpl implements SlidingWindowStatistics {
             scheduler .shutdownNow(); // Force shutdown if interrupted
             Thread.currentThread().interrupt(); // Restore interrupted status
         }
+        closeMeasurements();
+    }
+
+    private void closeMeasurements() {
+        if (measurements == null) {
+            return; // Stripes hold nothing to write back
+        }
+        try {
+            measurements.close(); // Writes a mapped window back to its file
+        } catch (IOException e) {
+            System.err.println("Error closing measurements: " + e.getMessage());
+        }
     }
 }
\ No newline at end of file
@@ -3,40 +3,82 @@ package Statistics;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Statistics of a window, backed by a {@link LogLinearHistogram} of its measurements.
+ *
+ * @param distribution the measurements of the window; must not be modified
+ * @param count the number of measurements
+ * @param sum the exact sum of the measurements
+ */
 public record StatisticsImpl(
-        HashMap<Integer, Integer> histogram) implements SlidingWindowStatistics.Statistics, BaseEvent { // Extend BaseEvent
+        LogLinearHistogram distribution, long count, long sum) implements SlidingWindowStatistics.Statistics, BaseEvent { // Extend BaseEvent
+    public static final long HIGHEST_TRACKABLE_VALUE = 1L << 31; // Every int measurement, including Integer.MIN_VALUE
+    public static final int SIGNIFICANT_DIGITS = 2;
+
+    // Builds the distribution from a histogram of exact values
+    public StatisticsImpl(HashMap<Integer, Integer> histogram) {
+        this(distributionOf(histogram), count(histogram), sum(histogram));
+    }
+
+    /**
+     * @return an empty histogram with the range and precision of window statistics
+     */
+    public static LogLinearHistogram newDistribution() {
+        return new LogLinearHistogram(HIGHEST_TRACKABLE_VALUE, SIGNIFICANT_DIGITS);
+    }
+
+    private static LogLinearHistogram distributionOf(HashMap<Integer, Integer> histogram) {
+        LogLinearHistogram distribution = newDistribution();
+        for (Map.Entry<Integer, Integer> entry : histogram.entrySet()) {
+            distribution.record(entry.getKey(), entry.getValue());
+        }
+        return distribution;
+    }
+
+    private static long count(HashMap<Integer, Integer> histogram) {
+        long count = 0;
+        for (int occurrences : histogram.values()) {
+            count += occurrences;
+        }
+        return count;
+    }
+
+    private static long sum(HashMap<Integer, Integer> histogram) {
+        long sum = 0;
+        for (Map.Entry<Integer, Integer> entry : histogram.entrySet()) {
+            sum += (long) entry.getKey() * entry.getValue();
+        }
+        return sum;
+    }
+
     @Override
     public boolean isCoalescing(){ return true;}
     @Override
     public double getMean() {
-        double sum = 0;
-        int count = 0;
-        for (Map.Entry<Integer, Integer> entry : histogram.entrySet()) {
-            sum += entry.getKey() * entry.getValue();
-            count += entry.getValue();
-        }
-        return count == 0 ? 0 : sum / count;
+        return count == 0 ? 0 : (double) sum / count;
     }
 
     @Override
     public int getMode() {
-        int mode = 0;
-        int maxCount = 0;
-
-        for (Map.Entry<Integer, Integer> entry : histogram.entrySet()) {
-            int count = entry.getValue();
-            if (count > maxCount) {
-                maxCount = count;
-                mode = entry.getKey();
-            }
-        }
-        return mode;
+        return (int) distribution.mode();
     }
 
+    /**
+     * Weighs every measurement, so e.g. the 99th percentile is the value that 99% of the measurements do not exceed.
+     */
     @Override
     public double getPctile(int pctile) {
-        int[] measurements = histogram.keySet().stream().mapToInt(Integer::intValue).toArray();
-        int index = (int) Math.ceil(pctile / 100.0 * measurements.length);
-        return measurements.length > 0 ? measurements[Math.min(index - 1, measurements.length - 1)] : 0;
+        return distribution.valueAtPercentile(pctile);
+    }
+
+    /**
+     * Compatibility view of the distribution, rebuilt on every call. Values above 255 are grouped
+     * with their neighbours that agree in the first two significant digits, under the lowest of them.
+     */
+    @Override
+    public HashMap<Integer, Integer> histogram() {
+        HashMap<Integer, Integer> histogram = new HashMap<>();
+        distribution.forEach((value, occurrences) -> histogram.put((int) value, (int) Math.min(occurrences, Integer.MAX_VALUE)));
+        return histogram;
     }
-}
\ No newline at end of file
+}
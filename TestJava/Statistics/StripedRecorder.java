@@ -0,0 +1,121 @@
+package Statistics;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Measurements recorded by many threads without contending with each other.
+ * <p>
+ * Every producer thread gets a stripe of its own, a single-producer ring of values and
+ * timestamps, on its first measurement. Recording is two array stores and a release store
+ * of the stripe's head, all to memory no other producer writes, so throughput grows with
+ * the number of cores instead of collapsing on one shared head. A single consumer drains
+ * the stripes lazily, e.g. when statistics are asked for or published, and merges them
+ * into the window. The stripes of threads that have terminated are drained one last
+ * time and dropped.
+ */
+final class StripedRecorder {
+    private final int stripeCapacity;
+    private final ThreadLocal<Stripe> stripe = ThreadLocal.withInitial(this::register);
+    private final CopyOnWriteArrayList<Stripe> stripes = new CopyOnWriteArrayList<>(); // Written once per producer thread
+
+    /**
+     * @param stripeCapacity measurements each thread can record between two drains
+     */
+    StripedRecorder(int stripeCapacity) {
+        if (stripeCapacity <= 0 || stripeCapacity > 1 << 26) {
+            throw new IllegalArgumentException("stripeCapacity must be between 1 and 2^26");
+        }
+        this.stripeCapacity = stripeCapacity;
+    }
+
+    private Stripe register() {
+        Stripe created = new Stripe(Thread.currentThread(), stripeCapacity);
+        stripes.add(created);
+        return created;
+    }
+
+    /**
+     * Records a measurement in the calling thread's stripe.
+     *
+     * @return false if the stripe is full until the next drain
+     */
+    boolean record(int value, long timestamp) {
+        return stripe.get().add(value, timestamp);
+    }
+
+    /**
+     * Hands the measurements recorded so far to the consumer, stripe by stripe, and frees their slots.
+     * Only one thread may drain at a time.
+     *
+     * @return the number of measurements drained
+     */
+    int drain(IntLongRingBuffer.IntLongConsumer consumer) {
+        int drained = 0;
+        for (Stripe each : stripes) {
+            drained += each.drain(consumer);
+            if (!each.owner.isAlive()) {
+                drained += each.drain(consumer); // Whatever it recorded before terminating is visible now
+                stripes.remove(each);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * @return the number of threads with a stripe
+     */
+    int stripeCount() {
+        return stripes.size();
+    }
+
+    /**
+     * A ring written by its owner thread only and drained by the consumer only, so neither needs
+     * more than an acquire read of the other's cursor.
+     */
+    private static final class Stripe {
+        private final Thread owner;
+        private final int capacity;
+        private final int[] values;
+        private final long[] timestamps;
+        private final int mask;
+        private final PaddedSequence head = new PaddedSequence(); // Next position to write, set by the owner
+        private final PaddedSequence tail = new PaddedSequence(); // Oldest position not yet drained, set by the consumer
+        private long cachedTail; // The owner's last read of the tail, refreshed only when the stripe looks full
+
+        Stripe(Thread owner, int capacity) {
+            int slots = Integer.highestOneBit(capacity);
+            slots = slots == capacity ? capacity : slots << 1; // Round up to a power of two
+            this.owner = owner;
+            this.capacity = capacity;
+            this.values = new int[slots];
+            this.timestamps = new long[slots];
+            this.mask = slots - 1;
+        }
+
+        boolean add(int value, long timestamp) {
+            long position = head.getAcquire();
+            if (position - cachedTail >= capacity) {
+                cachedTail = tail.getAcquire();
+                if (position - cachedTail >= capacity) {
+                    return false;
+                }
+            }
+            int index = (int) position & mask;
+            values[index] = value;
+            timestamps[index] = timestamp;
+            head.setRelease(position + 1); // Publish both fields
+            return true;
+        }
+
+        int drain(IntLongRingBuffer.IntLongConsumer consumer) {
+            long start = tail.getAcquire();
+            long end = head.getAcquire();
+            for (long position = start; position < end; position++) {
+                int index = (int) position & mask;
+                consumer.accept(values[index], timestamps[index]);
+            }
+            tail.setRelease(end);
+            return (int) (end - start);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package Statistics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounded mailbox and drain loop for a single subscriber.
+ * <p>
+ * The dispatcher only enqueues; delivery happens on the executor, one drain at a
+ * time, so each subscriber sees its events in publish order and a slow subscriber
+ * only ever delays itself.
+ * <p>
+ * A subscriber registered with {@link DeliveryHint#INLINE} skips the mailbox: the
+ * dispatcher calls it directly, without allocating or handing off to the executor.
+ * <p>
+ * Under {@link BackpressurePolicy#CONFLATE} the mailbox holds {@link ConflationSlot}s
+ * rather than events, one per class and coalescing key, as the bus's own queue does, so a
+ * newer event only replaces the pending one it supersedes.
+ * <p>
+ * The mailbox is also the subscriber's {@link Subscription}. Cancelling only sets a flag
+ * that the dispatcher checks before each hand-off; the entry is removed from the
+ * {@link DispatchTable} later, in bulk.
+ */
+class SubscriberMailbox implements Subscription {
+    private static final int DRAIN_BATCH = 64; // Events delivered before yielding the executor thread
+
+    private final EventSubscriber<BaseEvent> subscriber;
+    private final BackpressurePolicy backpressurePolicy;
+    private final boolean inline; // Delivered on the dispatcher thread, bypassing the mailbox
+    final BlockingQueue<BaseEvent> mailbox;
+    private final Executor executor;
+    private final Conflator conflator; // Null unless the mailbox conflates
+    private final AtomicBoolean scheduled = new AtomicBoolean(false); // True while a drain is queued or running
+    final SubscriberMetrics metrics;
+    private final WeakConsumer<?> weakSubscriber; // Null unless the subscriber is held weakly
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private volatile DispatchTable table; // Told about cancellations so it can compact
+
+    /**
+     * @param keys the bus's conflator, whose coalescing keys a conflating mailbox splits its slots by
+     */
+    SubscriberMailbox(EventSubscriber<BaseEvent> subscriber, SubscriberOptions options, Executor executor, SubscriberMetrics metrics, Conflator keys) {
+        this.subscriber = subscriber;
+        this.backpressurePolicy = options.backpressurePolicy();
+        this.inline = options.delivery() == DeliveryHint.INLINE;
+        this.mailbox = new ArrayBlockingQueue<>(inline ? 1 : options.mailboxCapacity()); // Stays empty when inline
+        this.executor = executor;
+        this.conflator = backpressurePolicy == BackpressurePolicy.CONFLATE && !inline ? new Conflator(keys) : null;
+        this.metrics = metrics;
+        this.weakSubscriber = subscriber != null ? WeakConsumer.behind(subscriber.subscriber) : null;
+    }
+
+    void registeredIn(DispatchTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public void cancel() {
+        if (!cancelled.compareAndSet(false, true)) {
+            return;
+        }
+        mailbox.clear(); // Also releases a dispatcher waiting for room under BLOCK
+        metrics.cancelled = true;
+        DispatchTable owner = table;
+        if (owner != null) {
+            owner.cancelled();
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        if (cancelled.get()) {
+            return false;
+        }
+        if (isReclaimed()) {
+            cancel();
+            return false;
+        }
+        return true;
+    }
+
+    boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * @return true if the subscriber was held weakly and has since been garbage collected
+     */
+    boolean isReclaimed() {
+        return weakSubscriber != null && weakSubscriber.isCleared();
+    }
+
+    /**
+     * Hands an event to the subscriber, applying the backpressure policy if the mailbox is full.
+     *
+     * @return false if the event was dropped or the subscription is no longer active
+     */
+    boolean offer(BaseEvent event) throws InterruptedException {
+        if (!isActive()) {
+            return false;
+        }
+        if (inline) {
+            deliver(event);
+            return true;
+        }
+        boolean accepted = switch (backpressurePolicy) {
+            case DROP_NEWEST -> {
+                if (mailbox.offer(event)) {
+                    yield true;
+                }
+                metrics.dropped.increment();
+                yield false;
+            }
+            case DROP_OLDEST -> {
+                while (!mailbox.offer(event)) {
+                    if (mailbox.poll() != null) {
+                        metrics.dropped.increment();
+                    }
+                }
+                yield true;
+            }
+            case CONFLATE -> {
+                ConflationSlot slot = conflator.conflate(event);
+                if (slot == null) {
+                    metrics.dropped.increment(); // Replaced the pending event of its key, whose slot is already queued
+                    yield true;
+                }
+                while (!mailbox.offer(slot)) {
+                    if (mailbox.poll() instanceof ConflationSlot oldest && oldest.take() != null) {
+                        metrics.dropped.increment(); // More keys pending than the mailbox holds
+                    }
+                }
+                yield true;
+            }
+            case BLOCK -> {
+                mailbox.put(event);
+                yield true;
+            }
+        };
+        scheduleDrain();
+        return accepted;
+    }
+
+    int size() {
+        return mailbox.size();
+    }
+
+    /**
+     * @return true if nothing is waiting for or being delivered to the subscriber
+     */
+    boolean isIdle() {
+        return mailbox.isEmpty() && !scheduled.get();
+    }
+
+    /**
+     * Empties the mailbox without delivering.
+     *
+     * @return the number of events discarded
+     */
+    int discardPending() {
+        int discarded = 0;
+        for (BaseEvent entry = mailbox.poll(); entry != null; entry = mailbox.poll()) {
+            if (toDeliver(entry) != null) {
+                discarded++;
+            }
+        }
+        return discarded;
+    }
+
+    boolean conflates() {
+        return conflator != null;
+    }
+
+    /**
+     * @return the event to deliver for a mailbox entry, taken out of its slot if the mailbox
+     *         conflates; null if the slot was emptied since
+     */
+    static BaseEvent toDeliver(BaseEvent entry) {
+        return entry instanceof ConflationSlot slot ? slot.take() : entry;
+    }
+
+    private void scheduleDrain() {
+        if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false); // Executor is shutting down
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            drainOnce();
+        } finally {
+            scheduled.set(false);
+            scheduleDrain(); // Pick up events that arrived while draining
+        }
+    }
+
+    /**
+     * Delivers a bounded number of pending events on the current executor thread.
+     */
+    void drainOnce() {
+        for (int i = 0; i < DRAIN_BATCH && !cancelled.get(); i++) {
+            BaseEvent entry = mailbox.poll();
+            if (entry == null) {
+                break;
+            }
+            BaseEvent event = toDeliver(entry);
+            if (event != null) {
+                deliver(event);
+            }
+        }
+    }
+
+    private void deliver(BaseEvent event) {
+        long start = metrics.latency.isEnabled() ? System.nanoTime() : 0;
+        try {
+            // Check if the event passes the filter (if any)
+            if (subscriber.test(event)) {
+                subscriber.subscriber.accept(event);
+            }
+        } catch (Exception e) {
+            metrics.errors.increment();
+            System.err.println("Error processing event: " + e.getMessage());
+        }
+        if (start != 0) {
+            metrics.latency.record(System.nanoTime() - start);
+        }
+    }
+}
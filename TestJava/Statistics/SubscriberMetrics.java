@@ -0,0 +1,19 @@
+package Statistics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and delivery latency of one subscriber, updated by its mailbox.
+ */
+class SubscriberMetrics {
+    final String name;
+    final LongAdder errors = new LongAdder();  // Exceptions thrown by the subscriber
+    final LongAdder dropped = new LongAdder(); // Events lost to the mailbox's backpressure policy
+    final LatencyRecorder latency;             // Time spent in the subscriber per delivery
+    volatile boolean cancelled;                // Dropped from the reports once set
+
+    SubscriberMetrics(String name, LatencyRecorder latency) {
+        this.name = name;
+        this.latency = latency;
+    }
+}
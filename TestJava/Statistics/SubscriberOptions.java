@@ -0,0 +1,54 @@
+package Statistics;
+
+import java.util.Objects;
+
+/**
+ * Per-subscriber delivery settings.
+ *
+ * @param mailboxCapacity maximum number of events waiting for the subscriber
+ * @param backpressurePolicy what happens when the mailbox is full; {@link #DEFAULT} drops the oldest
+ *                           pending event and counts it, so one slow subscriber never holds up the
+ *                           dispatcher, while {@link BackpressurePolicy#BLOCK} pushes back on publishers instead
+ * @param delivery whether the subscriber runs on the dispatcher thread or behind its mailbox;
+ *                 mailbox capacity and backpressure policy only apply to {@link DeliveryHint#ASYNC}
+ * @param weakReference whether the bus holds the subscriber weakly; the caller must then keep the
+ *                      subscriber reachable, and the subscription is cancelled once it is reclaimed;
+ *                      lambdas that capture nothing are shared constants and are never reclaimed
+ */
+public record SubscriberOptions(int mailboxCapacity, BackpressurePolicy backpressurePolicy, DeliveryHint delivery, boolean weakReference) {
+    public static final int DEFAULT_MAILBOX_CAPACITY = 1024;
+    public static final SubscriberOptions DEFAULT = new SubscriberOptions(DEFAULT_MAILBOX_CAPACITY, BackpressurePolicy.DROP_OLDEST);
+    public static final SubscriberOptions INLINE = DEFAULT.withDelivery(DeliveryHint.INLINE);
+
+    public SubscriberOptions {
+        if (mailboxCapacity <= 0) {
+            throw new IllegalArgumentException("mailboxCapacity must be positive");
+        }
+        Objects.requireNonNull(backpressurePolicy, "backpressurePolicy cannot be null");
+        Objects.requireNonNull(delivery, "delivery cannot be null");
+    }
+
+    public SubscriberOptions(int mailboxCapacity, BackpressurePolicy backpressurePolicy, DeliveryHint delivery) {
+        this(mailboxCapacity, backpressurePolicy, delivery, false);
+    }
+
+    public SubscriberOptions(int mailboxCapacity, BackpressurePolicy backpressurePolicy) {
+        this(mailboxCapacity, backpressurePolicy, DeliveryHint.ASYNC);
+    }
+
+    public SubscriberOptions withMailboxCapacity(int mailboxCapacity) {
+        return new SubscriberOptions(mailboxCapacity, backpressurePolicy, delivery, weakReference);
+    }
+
+    public SubscriberOptions withBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        return new SubscriberOptions(mailboxCapacity, backpressurePolicy, delivery, weakReference);
+    }
+
+    public SubscriberOptions withDelivery(DeliveryHint delivery) {
+        return new SubscriberOptions(mailboxCapacity, backpressurePolicy, delivery, weakReference);
+    }
+
+    public SubscriberOptions withWeakReference(boolean weakReference) {
+        return new SubscriberOptions(mailboxCapacity, backpressurePolicy, delivery, weakReference);
+    }
+}
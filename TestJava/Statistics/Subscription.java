@@ -0,0 +1,42 @@
+package Statistics;
+
+/**
+ * Handle to a subscriber registered on an {@link EventBus}.
+ */
+public interface Subscription {
+    /**
+     * Stops delivery to the subscriber. Events already waiting in its mailbox are discarded; a
+     * delivery in progress is allowed to finish. Cancelling more than once has no effect.
+     */
+    void cancel();
+
+    /**
+     * @return false once the subscription has been cancelled, or its weakly held subscriber reclaimed
+     */
+    boolean isActive();
+
+    /**
+     * Combines several subscriptions, e.g. one per lane of a sharded bus, into one handle.
+     */
+    static Subscription allOf(Subscription... subscriptions) {
+        Subscription[] parts = subscriptions.clone();
+        return new Subscription() {
+            @Override
+            public void cancel() {
+                for (Subscription part : parts) {
+                    part.cancel();
+                }
+            }
+
+            @Override
+            public boolean isActive() {
+                for (Subscription part : parts) {
+                    if (part.isActive()) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,228 @@
+package Statistics;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Merging t-digest (Dunning): a {@link QuantileSketch} that is most accurate in the tails.
+ * <p>
+ * The distribution is summarised by centroids, each a mean and the number of values it
+ * stands for. New values are buffered and, once the buffer fills, merged with the
+ * centroids in one sorted pass. Every centroid is limited to a span of 1 in both
+ * {@code k1(q) = compression / 2pi * asin(2q - 1)}, which keeps centroids near the median
+ * narrow, and {@code k2(q) = compression / Z * log(q / (1 - q))} with
+ * {@code Z = 4 log(n / compression) + 24}, which shrinks them towards the tails until the
+ * extremes hold a single value. Quantiles are
+ * interpolated between the centres of neighbouring centroids and the exact minimum and
+ * maximum.
+ */
+final class TDigest implements QuantileSketch {
+    private final double compression;
+    private double[] means;
+    private long[] weights;
+    private int centroids;
+    private final double[] buffer;
+    private int buffered;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    TDigest(double compression) {
+        if (!(compression >= 10 && compression <= 10_000)) {
+            throw new IllegalArgumentException("compression must be between 10 and 10000");
+        }
+        this.compression = compression;
+        int maxCentroids = (int) Math.ceil(2 * compression) + 10;
+        this.means = new double[maxCentroids];
+        this.weights = new long[maxCentroids];
+        this.buffer = new double[5 * maxCentroids];
+    }
+
+    @Override
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Cannot add NaN");
+        }
+        if (buffered == buffer.length) {
+            flush();
+        }
+        buffer[buffered++] = value;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Merges the buffered values into the centroids.
+     */
+    private void flush() {
+        if (buffered == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, buffered);
+        double[] incomingMeans = Arrays.copyOf(buffer, buffered);
+        long[] incomingWeights = new long[buffered];
+        Arrays.fill(incomingWeights, 1);
+        buffered = 0;
+        mergeSorted(incomingMeans, incomingWeights, incomingMeans.length);
+    }
+
+    /**
+     * Merges sorted centroids into this digest's centroids and compresses the result.
+     */
+    private void mergeSorted(double[] incomingMeans, long[] incomingWeights, int incoming) {
+        // Merge the two sorted runs
+        int total = centroids + incoming;
+        double[] allMeans = new double[total];
+        long[] allWeights = new long[total];
+        for (int i = 0, j = 0, target = 0; target < total; target++) {
+            if (j >= incoming || (i < centroids && means[i] <= incomingMeans[j])) {
+                allMeans[target] = means[i];
+                allWeights[target] = weights[i++];
+            } else {
+                allMeans[target] = incomingMeans[j];
+                allWeights[target] = incomingWeights[j++];
+            }
+        }
+
+        long totalWeight = 0;
+        for (long weight : allWeights) {
+            totalWeight += weight;
+        }
+        centroids = 0;
+        double mean = allMeans[0];
+        long weight = allWeights[0];
+        long before = 0; // Weight of the centroids already emitted
+        double limit = weightLimit(before, totalWeight);
+        for (int i = 1; i < total; i++) {
+            if (before + weight + allWeights[i] <= limit) {
+                weight += allWeights[i];
+                mean += (allMeans[i] - mean) * allWeights[i] / weight; // Incremental weighted mean
+            } else {
+                emit(mean, weight);
+                before += weight;
+                limit = weightLimit(before, totalWeight);
+                mean = allMeans[i];
+                weight = allWeights[i];
+            }
+        }
+        emit(mean, weight);
+    }
+
+    /**
+     * @return the cumulative weight at which a centroid starting after {@code before} must end
+     */
+    private double weightLimit(long before, long totalWeight) {
+        double k1 = compression / (2 * Math.PI) * Math.asin(2.0 * before / totalWeight - 1);
+        double q1 = k1 + 1 >= compression / 4 ? 1 : (Math.sin((k1 + 1) * 2 * Math.PI / compression) + 1) / 2;
+        double normalizer = compression / (4 * Math.log(Math.max(1.0, (double) totalWeight / compression)) + 24);
+        double q = (double) before / totalWeight;
+        double k2 = normalizer * Math.log(q / (1 - q)); // Minus infinity for the first centroid, which stays a singleton
+        double q2 = 1 / (1 + Math.exp(-(k2 + 1) / normalizer));
+        return Math.min(q1, q2) * totalWeight;
+    }
+
+    private void emit(double mean, long weight) {
+        if (centroids == means.length) {
+            means = Arrays.copyOf(means, centroids * 2);
+            weights = Arrays.copyOf(weights, centroids * 2);
+        }
+        means[centroids] = mean;
+        weights[centroids++] = weight;
+    }
+
+    @Override
+    public void merge(QuantileSketch other) {
+        if (!(other instanceof TDigest digest) || digest.compression != compression) {
+            throw new IllegalArgumentException("Can only merge a t-digest with the same compression");
+        }
+        flush();
+        digest.flush();
+        if (digest.count == 0) {
+            return;
+        }
+        mergeSorted(digest.means, digest.weights, digest.centroids);
+        count += digest.count;
+        min = Math.min(min, digest.min);
+        max = Math.max(max, digest.max);
+    }
+
+    @Override
+    public double quantile(double quantile) {
+        flush();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return means[0];
+        }
+        double rank = Math.min(Math.max(quantile, 0), 1) * count;
+        // Each centroid's mean sits at the middle of its weight; interpolate between neighbouring middles
+        double firstCentre = weights[0] / 2.0;
+        if (rank < firstCentre) {
+            return min + (means[0] - min) * rank / firstCentre;
+        }
+        double centre = firstCentre;
+        for (int i = 0; i + 1 < centroids; i++) {
+            double nextCentre = centre + (weights[i] + weights[i + 1]) / 2.0;
+            if (rank < nextCentre) {
+                return means[i] + (means[i + 1] - means[i]) * (rank - centre) / (nextCentre - centre);
+            }
+            centre = nextCentre;
+        }
+        double remaining = count - centre;
+        return remaining <= 0 ? max : means[centroids - 1] + (max - means[centroids - 1]) * (rank - centre) / remaining;
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public void forEach(WeightedValueConsumer consumer) {
+        flush();
+        for (int i = 0; i < centroids; i++) {
+            consumer.accept(means[i], weights[i]);
+        }
+    }
+
+    @Override
+    public QuantileSketch emptyCopy() {
+        return new TDigest(compression);
+    }
+
+    /**
+     * Layout: kind, compression, minimum, maximum, number of centroids, then the mean and weight of each.
+     */
+    @Override
+    public byte[] toBytes() {
+        flush();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(T_DIGEST);
+        SketchEncoding.putDouble(out, compression);
+        SketchEncoding.putDouble(out, min);
+        SketchEncoding.putDouble(out, max);
+        SketchEncoding.putVarLong(out, centroids);
+        for (int i = 0; i < centroids; i++) {
+            SketchEncoding.putDouble(out, means[i]);
+            SketchEncoding.putVarLong(out, weights[i]);
+        }
+        return out.toByteArray();
+    }
+
+    static TDigest read(ByteBuffer source) {
+        TDigest digest = new TDigest(SketchEncoding.getDouble(source));
+        digest.min = SketchEncoding.getDouble(source);
+        digest.max = SketchEncoding.getDouble(source);
+        int centroids = SketchEncoding.getLength(source, source.remaining() / (Double.BYTES + 1));
+        for (int i = 0; i < centroids; i++) {
+            double mean = SketchEncoding.getDouble(source);
+            long weight = SketchEncoding.getVarLong(source);
+            digest.emit(mean, weight);
+            digest.count += weight;
+        }
+        return digest;
+    }
+}
@@ -0,0 +1,40 @@
+package Statistics;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Parks for a fixed interval between checks. Producers never have to signal, at the cost
+ * of reacting up to one interval late.
+ */
+class TimedParkWaitStrategy implements WaitStrategy {
+    private final long intervalNanos;
+
+    TimedParkWaitStrategy(long intervalNanos) {
+        if (intervalNanos <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        this.intervalNanos = intervalNanos;
+    }
+
+    @Override
+    public boolean await(BooleanSupplier available, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (!available.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long remaining = timeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(intervalNanos, remaining));
+        }
+        return true;
+    }
+
+    @Override
+    public void signal() {
+        // Waiting consumers wake up on their own
+    }
+}
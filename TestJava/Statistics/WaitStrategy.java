@@ -0,0 +1,59 @@
+package Statistics;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+/**
+ * How a consumer waits for a producer, trading CPU for reaction time.
+ * <p>
+ * Consumers call {@link #await} when there is nothing to read, and producers call
+ * {@link #signal} after publishing. Spinning strategies react within nanoseconds but keep
+ * a core busy; parking strategies leave an idle consumer costing nothing. Strategies may
+ * keep state about waiting threads, so use one instance per buffer.
+ */
+public interface WaitStrategy {
+    /**
+     * Waits until the condition holds.
+     *
+     * @param available checked repeatedly; must be cheap and side-effect free
+     * @param timeoutNanos how long to wait at most; {@link Long#MAX_VALUE} to wait indefinitely
+     * @return true if the condition holds, false if the timeout elapsed first
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    boolean await(BooleanSupplier available, long timeoutNanos) throws InterruptedException;
+
+    /**
+     * Wakes the consumers waiting in {@link #await}, if any. Called by producers after publishing,
+     * so it must be cheap when nobody waits.
+     */
+    void signal();
+
+    /**
+     * @return a strategy that spins on the condition: lowest latency, but a waiting consumer uses a whole core
+     */
+    static WaitStrategy busySpin() {
+        return new BusySpinWaitStrategy();
+    }
+
+    /**
+     * @return a strategy that spins briefly, then yields the processor between checks
+     */
+    static WaitStrategy spinThenYield() {
+        return new YieldingWaitStrategy();
+    }
+
+    /**
+     * @return a strategy that parks waiting consumers until a producer signals them; idle consumers use no CPU
+     */
+    static WaitStrategy park() {
+        return new ParkingWaitStrategy();
+    }
+
+    /**
+     * @param interval how long to park between checks
+     * @return a strategy that parks for a fixed interval between checks and needs no signal from producers
+     */
+    static WaitStrategy timedPark(Duration interval) {
+        return new TimedParkWaitStrategy(interval.toNanos());
+    }
+}
@@ -0,0 +1,39 @@
+package Statistics;
+
+import java.lang.ref.WeakReference;
+import java.util.function.Consumer;
+
+/**
+ * Consumer that holds its target weakly, so that registering it with the bus does not keep
+ * the target alive. Once the target has been reclaimed, events are ignored and the mailbox
+ * cancels its subscription.
+ */
+class WeakConsumer<T> implements Consumer<T> {
+    private final WeakReference<Consumer<T>> target;
+
+    WeakConsumer(Consumer<T> target) {
+        this.target = new WeakReference<>(target);
+    }
+
+    /**
+     * @return the weak consumer a subscriber is held through, or null if it is held strongly
+     */
+    static WeakConsumer<?> behind(Consumer<?> subscriber) {
+        if (subscriber instanceof SerialConsumer<?> serial) {
+            return behind(serial.target());
+        }
+        return subscriber instanceof WeakConsumer<?> weak ? weak : null;
+    }
+
+    boolean isCleared() {
+        return target.refersTo(null);
+    }
+
+    @Override
+    public void accept(T value) {
+        Consumer<T> consumer = target.get();
+        if (consumer != null) {
+            consumer.accept(value);
+        }
+    }
+}
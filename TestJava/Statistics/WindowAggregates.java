@@ -0,0 +1,227 @@
+package Statistics;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Running count, sum and per-value counts of the measurements in a sliding window.
+ * <p>
+ * The window is a ring of fixed-width time buckets, e.g. 100 buckets of 10 milliseconds
+ * for a one second window, each holding the counts of the measurements taken during its
+ * time span. The window covers the newest bucket and the ones before it; when time moves
+ * past a bucket, it is subtracted from the totals and reused. Expiry thus drops whole
+ * buckets, and memory follows the number of buckets rather than the measurement rate.
+ * The totals are a {@link LogLinearHistogram}, so a snapshot is a copy of a fixed-size
+ * array however many distinct values the window holds. With a {@link QuantileSketch} as
+ * the quantile engine, each bucket keeps a sketch instead, and a snapshot merges the
+ * sketches of the buckets in the window.
+ * <p>
+ * Producers only append to the measurement ring, and the aggregates are its only consumer:
+ * each update moves the measurements appended since the previous one into their buckets.
+ * A ring mapped from a file keeps the measurements of the window instead, so that a
+ * restarted window can rebuild its buckets from them. With a {@link StripedRecorder}
+ * instead of a ring, each update drains the stripes of every producer thread.
+ */
+class WindowAggregates {
+    private final IntLongRingBuffer measurements; // Null when producers record into stripes
+    private final StripedRecorder stripes; // Null when producers append to the ring
+    private final boolean retainMeasurements; // Keep the window's measurements in the ring for a restart
+    private final long resolutionMillis;
+    private final Bucket[] buckets;
+    private final LogLinearHistogram totals = StatisticsImpl.newDistribution();
+    private final QuantileSketch quantileEngine; // Null to count exactly in the histogram
+    private long counted; // Ring position up to which retained measurements have been counted
+    private long newest = Long.MIN_VALUE; // Number of the newest bucket, i.e. its start time divided by the resolution
+    private long count;
+    private long sum;
+
+    /**
+     * @throws IllegalArgumentException unless the window length is a positive multiple of the resolution
+     */
+    WindowAggregates(IntLongRingBuffer measurements, Duration windowLength, Duration resolution) {
+        this(measurements, windowLength, resolution, null);
+    }
+
+    /**
+     * @param quantileEngine an empty sketch, copied for every bucket; null to count exactly in a {@link LogLinearHistogram}
+     * @throws IllegalArgumentException unless the window length is a positive multiple of the resolution
+     */
+    WindowAggregates(IntLongRingBuffer measurements, Duration windowLength, Duration resolution, QuantileSketch quantileEngine) {
+        this(measurements, null, windowLength, resolution, quantileEngine);
+    }
+
+    /**
+     * Aggregates the measurements of producers that each record into a stripe of their own.
+     *
+     * @throws IllegalArgumentException unless the window length is a positive multiple of the resolution
+     */
+    WindowAggregates(StripedRecorder stripes, Duration windowLength, Duration resolution, QuantileSketch quantileEngine) {
+        this(null, stripes, windowLength, resolution, quantileEngine);
+    }
+
+    private WindowAggregates(IntLongRingBuffer measurements, StripedRecorder stripes, Duration windowLength, Duration resolution,
+                             QuantileSketch quantileEngine) {
+        long windowMillis = windowLength.toMillis();
+        this.resolutionMillis = resolution.toMillis();
+        if (resolutionMillis <= 0 || windowMillis < resolutionMillis || windowMillis % resolutionMillis != 0) {
+            throw new IllegalArgumentException("windowLength must be a positive multiple of resolution, which must be at least 1ms");
+        }
+        if (windowMillis / resolutionMillis > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many buckets: " + windowMillis / resolutionMillis);
+        }
+        this.measurements = measurements;
+        this.stripes = stripes;
+        this.quantileEngine = quantileEngine != null ? quantileEngine.emptyCopy() : null;
+        this.retainMeasurements = measurements != null && measurements.isMapped();
+        this.buckets = new Bucket[(int) (windowMillis / resolutionMillis)];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Counts the new measurements and drops the buckets that have left the window.
+     */
+    synchronized void update(long currentTime) {
+        advanceTo(Math.floorDiv(currentTime, resolutionMillis));
+        if (stripes != null) {
+            stripes.drain(this::enter); // Stripes interleave in time, which enter() copes with
+        } else if (retainMeasurements) {
+            counted = measurements.forEachFrom(counted, this::enter);
+            // Keep exactly the measurements of the buckets still in the window
+            measurements.advanceTailOlderThan((newest - buckets.length + 1) * resolutionMillis);
+        } else {
+            measurements.advanceTailOlderThan(Long.MAX_VALUE, this::enter);
+        }
+    }
+
+    /**
+     * Updates the aggregates and returns them as statistics.
+     */
+    synchronized SlidingWindowStatistics.Statistics snapshot(long currentTime) {
+        update(currentTime);
+        if (quantileEngine == null) {
+            return new StatisticsImpl(totals.copy(), count, sum);
+        }
+        QuantileSketch merged = quantileEngine.emptyCopy();
+        for (Bucket bucket : buckets) {
+            if (bucket.sketch != null) {
+                merged.merge(bucket.sketch);
+            }
+        }
+        return new SketchStatistics(merged, count, sum);
+    }
+
+    private void enter(int value, long timestamp) {
+        long number = Math.floorDiv(timestamp, resolutionMillis);
+        advanceTo(number); // A measurement taken after the update started opens a newer bucket
+        if (number <= newest - buckets.length) {
+            return; // Its bucket has already left the window
+        }
+        Bucket bucket = buckets[index(number)];
+        bucket.number = number;
+        if (quantileEngine == null) {
+            int slot = totals.indexOf(value);
+            bucket.increment(slot);
+            totals.addAtIndex(slot, 1);
+        } else {
+            if (bucket.sketch == null) {
+                bucket.sketch = quantileEngine.emptyCopy();
+            }
+            bucket.sketch.add(value);
+        }
+        bucket.count++;
+        bucket.sum += value;
+        count++;
+        sum += value;
+    }
+
+    /**
+     * Makes the given bucket the newest, clearing every bucket that falls out of the window.
+     */
+    private void advanceTo(long number) {
+        if (number <= newest) {
+            return;
+        }
+        long firstLive = number - buckets.length + 1;
+        // Only the slots of the buckets passed over can hold expired counts, at most one lap of them
+        long from = newest == Long.MIN_VALUE ? firstLive : Math.max(newest - buckets.length + 1, firstLive - buckets.length);
+        for (long expired = from; expired < firstLive; expired++) {
+            Bucket bucket = buckets[index(expired)];
+            if (bucket.count > 0 && bucket.number < firstLive) {
+                clear(bucket);
+            }
+        }
+        newest = number;
+    }
+
+    private void clear(Bucket bucket) {
+        int[] slotCounts = bucket.slotCounts;
+        for (int i = 0; i < slotCounts.length; i += 2) {
+            if (slotCounts[i + 1] != 0) {
+                totals.addAtIndex(slotCounts[i], -slotCounts[i + 1]);
+            }
+        }
+        count -= bucket.count;
+        sum -= bucket.sum;
+        Arrays.fill(slotCounts, 0); // Keeps its size, as the next lap of the window likely needs it again
+        bucket.usedPairs = 0;
+        bucket.sketch = null; // Sketches cannot subtract, so the bucket starts a fresh one
+        bucket.count = 0;
+        bucket.sum = 0;
+    }
+
+    private int index(long number) {
+        return (int) Math.floorMod(number, (long) buckets.length);
+    }
+
+    /**
+     * Counts of the measurements taken during one time span of the window.
+     */
+    private static final class Bucket {
+        // Histogram slot and count pairs in an open-addressed table, at most half full; a zero count marks a
+        // free pair. Bounded by the histogram size, and free of the boxing a map of counts would cost.
+        private int[] slotCounts = new int[32];
+        private int usedPairs;
+        private QuantileSketch sketch; // Used instead of the counts with a quantile engine
+        private long number;
+        private long count;
+        private long sum;
+
+        void increment(int slot) {
+            int pair = find(slotCounts, slot);
+            if (slotCounts[pair + 1] == 0) {
+                if (++usedPairs > slotCounts.length / 4) {
+                    grow();
+                    pair = find(slotCounts, slot);
+                }
+                slotCounts[pair] = slot;
+            }
+            slotCounts[pair + 1]++;
+        }
+
+        /**
+         * @return the index of the pair holding the slot, or of the free pair where it belongs
+         */
+        private static int find(int[] table, int slot) {
+            int mask = table.length / 2 - 1;
+            int pair = (slot ^ (slot >>> 16)) & mask;
+            while (table[2 * pair + 1] != 0 && table[2 * pair] != slot) {
+                pair = (pair + 1) & mask;
+            }
+            return 2 * pair;
+        }
+
+        private void grow() {
+            int[] grown = new int[2 * slotCounts.length];
+            for (int i = 0; i < slotCounts.length; i += 2) {
+                if (slotCounts[i + 1] != 0) {
+                    int pair = find(grown, slotCounts[i]);
+                    grown[pair] = slotCounts[i];
+                    grown[pair + 1] = slotCounts[i + 1];
+                }
+            }
+            slotCounts = grown;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package Statistics;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Spins for a short while, then yields the processor between checks, so a waiting consumer
+ * reacts quickly but lets other threads on its core run.
+ */
+class YieldingWaitStrategy implements WaitStrategy {
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public boolean await(BooleanSupplier available, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        for (int tries = 0; !available.getAsBoolean(); tries++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (timeoutNanos != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            if (tries < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void signal() {
+        // Waiting consumers never stop checking
+    }
+}
@@ -0,0 +1,100 @@
+package StatisticsBenchmark;
+
+import Statistics.BaseEvent;
+import Statistics.EventBusImpl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Compares the delivery modes of {@link EventBusImpl} on blocking and CPU-bound subscribers.
+ * <p>
+ * Each run registers a number of subscribers, publishes a fixed number of events and
+ * measures the time until every subscriber has seen every event.
+ * Run with {@code java StatisticsBenchmark.EventBusDeliveryBenchmark}.
+ */
+public class EventBusDeliveryBenchmark {
+    private static final int SUBSCRIBERS = 32;
+    private static final int EVENTS = 2_000;
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 3;
+
+    public static void main(String[] args) throws InterruptedException {
+        ExecutorService callerPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        Map<String, Supplier<EventBusImpl>> modes = new LinkedHashMap<>();
+        modes.put("thread-pool(10)", () -> EventBusImpl.builder().threadPool(10).build());
+        modes.put("virtual-threads", () -> EventBusImpl.builder().virtualThreads().build());
+        modes.put("caller-executor", () -> EventBusImpl.builder().executor(callerPool).build());
+        modes.put("inline", () -> EventBusImpl.builder().inlineDelivery().build());
+
+        Map<String, Consumer<BaseEvent>> workloads = new LinkedHashMap<>();
+        workloads.put("blocking-io(200us)", _ -> sleepNanos(200_000));
+        workloads.put("cpu-bound(20us)", _ -> spinNanos(20_000));
+
+        System.out.printf("%-20s %-20s %15s %15s%n", "workload", "mode", "ms/run", "deliveries/s");
+        for (Map.Entry<String, Consumer<BaseEvent>> workload : workloads.entrySet()) {
+            for (Map.Entry<String, Supplier<EventBusImpl>> mode : modes.entrySet()) {
+                for (int i = 0; i < WARMUP_RUNS; i++) {
+                    run(mode.getValue(), workload.getValue());
+                }
+                long totalNanos = 0;
+                for (int i = 0; i < MEASURED_RUNS; i++) {
+                    totalNanos += run(mode.getValue(), workload.getValue());
+                }
+                double millisPerRun = totalNanos / (double) MEASURED_RUNS / 1_000_000;
+                double deliveriesPerSecond = SUBSCRIBERS * (double) EVENTS / (millisPerRun / 1000);
+                System.out.printf("%-20s %-20s %15.1f %15.0f%n", workload.getKey(), mode.getKey(), millisPerRun, deliveriesPerSecond);
+            }
+        }
+        callerPool.shutdown();
+    }
+
+    private static long run(Supplier<EventBusImpl> busFactory, Consumer<BaseEvent> work) throws InterruptedException {
+        EventBusImpl bus = busFactory.get();
+        CountDownLatch done = new CountDownLatch(SUBSCRIBERS * EVENTS);
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            bus.addSubscriber(BenchmarkEvent.class, event -> {
+                work.accept(event);
+                done.countDown();
+            });
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < EVENTS; i++) {
+            bus.publishEvent(new BenchmarkEvent(i));
+        }
+        if (!done.await(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Benchmark run did not complete");
+        }
+        long elapsed = System.nanoTime() - start;
+        bus.shutdown();
+        return elapsed;
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void spinNanos(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private record BenchmarkEvent(int sequence) implements BaseEvent {
+        public boolean isCoalescing() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package StatisticsBenchmark;
+
+import Statistics.LockFreeRingBuffer;
+
+/**
+ * Measures {@link LockFreeRingBuffer} throughput with 1 to 32 producer threads and a
+ * single consumer, and checks that no item is lost on the way.
+ * <p>
+ * The total number of items per run is fixed and split between the producers, so the
+ * figures show how throughput holds up as contention on the head grows.
+ * Run with {@code java StatisticsBenchmark.LockFreeRingBufferBenchmark}.
+ */
+public class LockFreeRingBufferBenchmark {
+    private static final int[] PRODUCER_COUNTS = {1, 2, 4, 8, 16, 32};
+    private static final int CAPACITY = 64 * 1024;
+    private static final int ITEMS_PER_RUN = 4_000_000;
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 3;
+    private static final int SPINS_BEFORE_YIELD = 100;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("%d cores available%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-10s %15s %15s%n", "producers", "ms/run", "items/s");
+        for (int producers : PRODUCER_COUNTS) {
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                run(producers);
+            }
+            long totalNanos = 0;
+            for (int i = 0; i < MEASURED_RUNS; i++) {
+                totalNanos += run(producers);
+            }
+            double millisPerRun = totalNanos / (double) MEASURED_RUNS / 1_000_000;
+            double itemsPerSecond = ITEMS_PER_RUN / (millisPerRun / 1000);
+            System.out.printf("%-10d %15.1f %15.0f%n", producers, millisPerRun, itemsPerSecond);
+        }
+    }
+
+    private static long run(int producerCount) throws InterruptedException {
+        LockFreeRingBuffer<Long> ring = new LockFreeRingBuffer<>(CAPACITY);
+        int perProducer = ITEMS_PER_RUN / producerCount;
+        long expected = (long) perProducer * producerCount;
+        long[] consumed = new long[1];
+
+        long start = System.nanoTime();
+        Thread consumer = Thread.ofPlatform().start(() -> {
+            int idle = 0;
+            while (consumed[0] < expected) {
+                if (ring.advanceTail()) {
+                    consumed[0]++;
+                    idle = 0;
+                } else {
+                    idle = backOff(idle);
+                }
+            }
+        });
+        Thread[] producers = new Thread[producerCount];
+        for (int p = 0; p < producerCount; p++) {
+            producers[p] = Thread.ofPlatform().start(() -> {
+                Long item = 42L; // Boxed once so the run measures the ring, not allocation
+                for (int i = 0; i < perProducer; i++) {
+                    int idle = 0;
+                    while (!ring.add(item)) {
+                        idle = backOff(idle);
+                    }
+                }
+            });
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        consumer.join();
+        long elapsed = System.nanoTime() - start;
+
+        if (consumed[0] != expected || ring.size() != 0) {
+            throw new IllegalStateException("Lost items: consumed " + consumed[0] + " of " + expected);
+        }
+        return elapsed;
+    }
+
+    private static int backOff(int idle) {
+        if (idle < SPINS_BEFORE_YIELD) {
+            Thread.onSpinWait();
+            return idle + 1;
+        }
+        Thread.yield();
+        return idle;
+    }
+}
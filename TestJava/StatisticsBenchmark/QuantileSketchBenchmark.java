@@ -0,0 +1,152 @@
+package StatisticsBenchmark;
+
+import Statistics.LogLinearHistogram;
+import Statistics.QuantileSketch;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares the {@link QuantileSketch} kinds with the exact {@link LogLinearHistogram} path
+ * on latencies in nanoseconds spanning microseconds to seconds.
+ * <p>
+ * For each engine the table shows the cost of adding a value, of merging 16 partial
+ * summaries into one, the size of the serialized form, and the worst relative and rank
+ * errors over a set of percentiles against the exactly sorted values.
+ * Run with {@code java StatisticsBenchmark.QuantileSketchBenchmark}.
+ */
+public class QuantileSketchBenchmark {
+    private static final int VALUES = 4_000_000;
+    private static final int PARTS = 16;
+    private static final int WARMUP_RUNS = 2;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * What the benchmark needs from a quantile engine.
+     */
+    private interface Engine {
+        void add(double value);
+
+        void merge(Engine other);
+
+        double quantile(double quantile);
+
+        int serializedBytes();
+    }
+
+    public static void main(String[] args) {
+        double[] values = latencies();
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        System.out.printf("%d cores available, %d values%n", Runtime.getRuntime().availableProcessors(), VALUES);
+        System.out.printf("%-28s %10s %12s %10s %12s %12s%n", "engine", "ns/add", "merge ms", "bytes", "max rel err", "max rank err");
+        run("exact histogram (3 digits)", HistogramEngine::new, values, sorted);
+        run("t-digest (100)", () -> new SketchEngine(QuantileSketch.tDigest(100)), values, sorted);
+        run("KLL (200)", () -> new SketchEngine(QuantileSketch.kll(200)), values, sorted);
+        run("DDSketch (1%)", () -> new SketchEngine(QuantileSketch.ddSketch(0.01)), values, sorted);
+    }
+
+    private static void run(String name, Supplier<Engine> engines, double[] values, double[] sorted) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            fill(engines.get(), values, 0, values.length);
+        }
+
+        Engine whole = engines.get();
+        long start = System.nanoTime();
+        fill(whole, values, 0, values.length);
+        double nanosPerAdd = (System.nanoTime() - start) / (double) values.length;
+
+        Engine[] parts = new Engine[PARTS];
+        for (int p = 0; p < PARTS; p++) {
+            parts[p] = fill(engines.get(), values, p * (values.length / PARTS), (p + 1) * (values.length / PARTS));
+        }
+        Engine merged = engines.get();
+        start = System.nanoTime();
+        for (Engine part : parts) {
+            merged.merge(part);
+        }
+        double mergeMillis = (System.nanoTime() - start) / 1_000_000.0;
+
+        double maxRelativeError = 0;
+        double maxRankError = 0;
+        for (double quantile : QUANTILES) {
+            double exact = sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)];
+            double estimate = merged.quantile(quantile);
+            maxRelativeError = Math.max(maxRelativeError, Math.abs(estimate - exact) / exact);
+            maxRankError = Math.max(maxRankError, Math.abs(rankOf(sorted, estimate) - quantile));
+        }
+        System.out.printf("%-28s %10.1f %12.2f %10d %11.3f%% %11.3f%%%n",
+                name, nanosPerAdd, mergeMillis, whole.serializedBytes(), 100 * maxRelativeError, 100 * maxRankError);
+    }
+
+    private static Engine fill(Engine engine, double[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            engine.add(values[i]);
+        }
+        return engine;
+    }
+
+    private static double[] latencies() {
+        Random random = new Random(42);
+        double[] latencies = new double[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            latencies[i] = Math.rint(Math.exp(11 + 2 * random.nextGaussian())); // Median ~60us, long tail
+        }
+        return latencies;
+    }
+
+    private static double rankOf(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        return (index >= 0 ? index : -index - 1) / (double) sorted.length;
+    }
+
+    private static final class HistogramEngine implements Engine {
+        private final LogLinearHistogram histogram = new LogLinearHistogram(1L << 40, 3);
+
+        @Override
+        public void add(double value) {
+            histogram.record((long) value);
+        }
+
+        @Override
+        public void merge(Engine other) {
+            histogram.add(((HistogramEngine) other).histogram);
+        }
+
+        @Override
+        public double quantile(double quantile) {
+            return histogram.valueAtPercentile(100 * quantile);
+        }
+
+        @Override
+        public int serializedBytes() {
+            int[] buckets = new int[1];
+            histogram.forEach((_, _) -> buckets[0]++);
+            return buckets[0] * 2 * Long.BYTES; // A sparse value/count encoding of the non-empty buckets
+        }
+    }
+
+    private record SketchEngine(QuantileSketch sketch) implements Engine {
+        @Override
+        public void add(double value) {
+            sketch.add(value);
+        }
+
+        @Override
+        public void merge(Engine other) {
+            sketch.merge(((SketchEngine) other).sketch);
+        }
+
+        @Override
+        public double quantile(double quantile) {
+            return sketch.quantile(quantile);
+        }
+
+        @Override
+        public int serializedBytes() {
+            return sketch.toBytes().length;
+        }
+    }
+}
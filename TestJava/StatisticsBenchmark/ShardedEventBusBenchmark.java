@@ -0,0 +1,87 @@
+package StatisticsBenchmark;
+
+import Statistics.BaseEvent;
+import Statistics.DispatchMode;
+import Statistics.EventBusImpl;
+import Statistics.ShardedEventBus;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how {@link ShardedEventBus} throughput scales with the number of dispatcher lanes.
+ * <p>
+ * Subscribers run inline on their lane's dispatcher, so a single lane is limited to one core.
+ * Several publisher threads each publish a stream of events with its own partition key.
+ * Run with {@code java StatisticsBenchmark.ShardedEventBusBenchmark}.
+ */
+public class ShardedEventBusBenchmark {
+    private static final int[] LANE_COUNTS = {1, 2, 4, 8};
+    private static final int PUBLISHERS = 8;
+    private static final int KEYS = 64;
+    private static final int EVENTS_PER_PUBLISHER = 50_000;
+    private static final long WORK_NANOS = 2_000; // CPU time each event costs the subscriber
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 3;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("%d cores available%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s %15s %15s%n", "lanes", "ms/run", "events/s");
+        for (int lanes : LANE_COUNTS) {
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                run(lanes);
+            }
+            long totalNanos = 0;
+            for (int i = 0; i < MEASURED_RUNS; i++) {
+                totalNanos += run(lanes);
+            }
+            double millisPerRun = totalNanos / (double) MEASURED_RUNS / 1_000_000;
+            double eventsPerSecond = PUBLISHERS * (double) EVENTS_PER_PUBLISHER / (millisPerRun / 1000);
+            System.out.printf("%-8d %15.1f %15.0f%n", lanes, millisPerRun, eventsPerSecond);
+        }
+    }
+
+    private static long run(int laneCount) throws InterruptedException {
+        ShardedEventBus bus = new ShardedEventBus(laneCount,
+                () -> EventBusImpl.builder().dispatchMode(DispatchMode.RING).capacity(8192).inlineDelivery().build());
+        bus.registerPartitionKey(BenchmarkEvent.class, event -> ((BenchmarkEvent) event).key());
+        CountDownLatch done = new CountDownLatch(PUBLISHERS * EVENTS_PER_PUBLISHER);
+        bus.addSubscriber(BenchmarkEvent.class, _ -> {
+            spinNanos(WORK_NANOS);
+            done.countDown();
+        });
+
+        Thread[] publishers = new Thread[PUBLISHERS];
+        long start = System.nanoTime();
+        for (int p = 0; p < PUBLISHERS; p++) {
+            int publisher = p;
+            publishers[p] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < EVENTS_PER_PUBLISHER; i++) {
+                    bus.publishEvent(new BenchmarkEvent((publisher * 31 + i) % KEYS, i));
+                }
+            });
+        }
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+        if (!done.await(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Benchmark run did not complete");
+        }
+        long elapsed = System.nanoTime() - start;
+        bus.shutdown();
+        return elapsed;
+    }
+
+    private static void spinNanos(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private record BenchmarkEvent(int key, int sequence) implements BaseEvent {
+        public boolean isCoalescing() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package StatisticsBenchmark;
+
+import Statistics.SlidingWindowStatisticsImpl;
+
+import java.util.function.IntFunction;
+
+/**
+ * Measures {@link SlidingWindowStatisticsImpl#add(int)} throughput with 1 to 32 producer
+ * threads, for a window whose producers share one ring and for a striped window whose
+ * producers each record into a stripe of their own.
+ * <p>
+ * The total number of measurements per run is fixed and split between the producers,
+ * while a reader asks for the statistics every 10 milliseconds as a publisher would.
+ * Shared-ring throughput falls as contention on its head grows; striped throughput
+ * should grow with the number of cores. A shared ring drops a measurement when other
+ * producers fill it again between its drain and the retry, so the table also shows how
+ * many went missing there; a striped window must count every one.
+ * Run with {@code java StatisticsBenchmark.StripedRecordingBenchmark}.
+ */
+public class StripedRecordingBenchmark {
+    private static final int[] PRODUCER_COUNTS = {1, 2, 4, 8, 16, 32};
+    private static final int CAPACITY = 64 * 1024;
+    private static final int MEASUREMENTS_PER_RUN = 4_000_000;
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 3;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("%d cores available%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-10s %18s %14s %18s%n", "producers", "shared adds/s", "shared lost", "striped adds/s");
+        for (int producers : PRODUCER_COUNTS) {
+            long[] lost = new long[1];
+            double shared = measure(producers, SlidingWindowStatisticsImpl::new, lost);
+            long sharedLost = lost[0];
+            double striped = measure(producers, SlidingWindowStatisticsImpl::striped, lost);
+            if (lost[0] != sharedLost) {
+                throw new IllegalStateException("Striped window lost " + (lost[0] - sharedLost) + " measurements");
+            }
+            System.out.printf("%-10d %18.0f %14d %18.0f%n", producers, shared, sharedLost, striped);
+        }
+    }
+
+    /**
+     * @param lost incremented by the measurements the measured runs did not count
+     * @return measurements added per second
+     */
+    private static double measure(int producers, IntFunction<SlidingWindowStatisticsImpl> windows, long[] lost) throws InterruptedException {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run(producers, windows.apply(CAPACITY), new long[1]);
+        }
+        long totalNanos = 0;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            totalNanos += run(producers, windows.apply(CAPACITY), lost);
+        }
+        return MEASUREMENTS_PER_RUN / (totalNanos / (double) MEASURED_RUNS / 1_000_000_000);
+    }
+
+    private static long run(int producerCount, SlidingWindowStatisticsImpl window, long[] lost) throws InterruptedException {
+        int perProducer = MEASUREMENTS_PER_RUN / producerCount;
+        long expected = (long) perProducer * producerCount;
+        try {
+            long start = System.nanoTime();
+            Thread[] producers = new Thread[producerCount];
+            for (int p = 0; p < producerCount; p++) {
+                producers[p] = Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        window.add(i & 1023);
+                    }
+                });
+            }
+            Thread reader = Thread.ofPlatform().start(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    window.getLatestStatistics();
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            long elapsed = System.nanoTime() - start;
+            reader.interrupt();
+            reader.join();
+
+            // Every measurement is younger than the one second window unless a run is very slow
+            long counted = window.getLatestStatistics().histogram().values().stream().mapToLong(Integer::longValue).sum();
+            if (elapsed < 900_000_000L) {
+                lost[0] += expected - counted;
+            }
+            return elapsed;
+        } finally {
+            window.shutdown();
+        }
+    }
+}
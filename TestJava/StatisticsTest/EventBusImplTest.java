@@ -1,13 +1,36 @@
 package StatisticsTest;
 
+import Statistics.BackpressurePolicy;
 import Statistics.BaseEvent;
+import Statistics.DispatchMode;
 import Statistics.EventBusImpl;
+import Statistics.EventBusMetrics;
+import Statistics.OverflowPolicy;
+import Statistics.PublishResult;
+import Statistics.SubscriberOptions;
+import Statistics.Subscription;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -102,6 +125,696 @@ public class EventBusImplTest {
         assertFalse(latch.await(1, TimeUnit.MILLISECONDS));
     }
 
+    @Test
+    public void testRingDispatchDeliversEventsFromConcurrentPublishers() throws InterruptedException {
+        int publishers = 4;
+        int eventsPerPublisher = 1000;
+        EventBusImpl ringBus = new EventBusImpl(DispatchMode.RING, 64); // Small ring so publishers wrap around
+        CountDownLatch latch = new CountDownLatch(publishers * eventsPerPublisher);
+
+        try {
+            ringBus.addSubscriber(SequencedEvent.class, _ -> latch.countDown());
+
+            try (ExecutorService executor = Executors.newFixedThreadPool(publishers)) {
+                for (int p = 0; p < publishers; p++) {
+                    executor.submit(() -> {
+                        for (int i = 0; i < eventsPerPublisher; i++) {
+                            assertTrue(ringBus.publishEvent(new SequencedEvent(i)).isAccepted());
+                        }
+                    });
+                }
+            }
+
+            // Every event must be delivered, none lost when the ring wraps
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            ringBus.shutdown();
+        }
+    }
+
+    @Test
+    public void testRingSurvivesTheSameEventRepublishedWhileDroppingOldest() throws InterruptedException {
+        EventBusImpl ringBus = EventBusImpl.builder().dispatchMode(DispatchMode.RING).capacity(2)
+                .overflowPolicy(OverflowPolicy.DROP_OLDEST).build();
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch last = new CountDownLatch(1);
+        try {
+            ringBus.addSubscriber(SequencedEvent.class, event -> {
+                received.incrementAndGet();
+                if (((SequencedEvent) event).sequence() == -1) {
+                    last.countDown();
+                }
+            }, SubscriberOptions.INLINE);
+
+            // Publishers lapping the dispatcher with one reused instance must not get their slots cleared
+            SequencedEvent reused = new SequencedEvent(0);
+            try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+                for (int p = 0; p < 4; p++) {
+                    executor.submit(() -> {
+                        for (int i = 0; i < 20_000; i++) {
+                            ringBus.publishEvent(reused);
+                        }
+                    });
+                }
+            }
+            ringBus.publishEvent(new SequencedEvent(-1));
+
+            assertTrue(last.await(5, TimeUnit.SECONDS), "The dispatcher should still be delivering");
+            assertTrue(received.get() > 0);
+        } finally {
+            ringBus.shutdown();
+        }
+    }
+
+    @Test
+    public void testDroppedCountMatchesTheEventsThatWereNotDelivered() throws InterruptedException {
+        EventBusImpl droppingBus = EventBusImpl.builder().capacity(4).overflowPolicy(OverflowPolicy.DROP_OLDEST).build();
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger delivered = new AtomicInteger();
+        int events = 100;
+        try {
+            droppingBus.addSubscriber(SequencedEvent.class, _ -> {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                delivered.incrementAndGet();
+            }, SubscriberOptions.DEFAULT.withMailboxCapacity(1).withBackpressurePolicy(BackpressurePolicy.BLOCK));
+            for (int i = 0; i < events; i++) {
+                assertTrue(droppingBus.publishEvent(new SequencedEvent(i)).isAccepted());
+            }
+            gate.countDown();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (delivered.get() + droppingBus.metrics().droppedCount() < events && System.nanoTime() - deadline < 0) {
+                Thread.sleep(10);
+            }
+            assertTrue(droppingBus.metrics().droppedCount() > 0, "A stalled bus of capacity 4 must drop");
+            assertEquals(events, delivered.get() + droppingBus.metrics().droppedCount(), "Every event is either delivered or counted as dropped");
+        } finally {
+            gate.countDown();
+            droppingBus.shutdown();
+        }
+    }
+
+    @Test
+    public void testSlowSubscriberDoesNotStallOtherSubscribers() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch fastLatch = new CountDownLatch(10);
+
+        // The slow subscriber blocks until the end of the test and drops whatever does not fit
+        eventBus.addSubscriber(SequencedEvent.class, _ -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, SubscriberOptions.DEFAULT.withMailboxCapacity(1).withBackpressurePolicy(BackpressurePolicy.DROP_NEWEST));
+        eventBus.addSubscriber(SequencedEvent.class, _ -> fastLatch.countDown());
+
+        for (int i = 0; i < 10; i++) {
+            eventBus.publishEvent(new SequencedEvent(i));
+        }
+
+        assertTrue(fastLatch.await(1, TimeUnit.SECONDS));
+        gate.countDown();
+    }
+
+    @Test
+    public void testDropOldestKeepsNewestEvents() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch lastEventLatch = new CountDownLatch(1);
+        List<Integer> received = new CopyOnWriteArrayList<>();
+
+        eventBus.addSubscriber(SequencedEvent.class, event -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            int sequence = ((SequencedEvent) event).sequence();
+            received.add(sequence);
+            if (sequence == 9) {
+                lastEventLatch.countDown();
+            }
+        }, SubscriberOptions.DEFAULT.withMailboxCapacity(2).withBackpressurePolicy(BackpressurePolicy.DROP_OLDEST));
+
+        for (int i = 0; i < 10; i++) {
+            eventBus.publishEvent(new SequencedEvent(i));
+        }
+        Thread.sleep(100); // Let the dispatcher fill the mailbox
+        gate.countDown();
+
+        assertTrue(lastEventLatch.await(1, TimeUnit.SECONDS));
+        assertTrue(received.size() < 10, "Older events should have been dropped");
+        assertEquals(9, received.get(received.size() - 1));
+    }
+
+    @Test
+    public void testBatchPublishToBatchSubscriber() throws InterruptedException {
+        int eventCount = 1000;
+        int maxBatchSize = 100;
+        CountDownLatch latch = new CountDownLatch(eventCount);
+        AtomicInteger batches = new AtomicInteger();
+        AtomicInteger oversizedBatches = new AtomicInteger();
+
+        eventBus.addBatchSubscriber(SequencedEvent.class, batch -> {
+            batches.incrementAndGet();
+            if (batch.size() > maxBatchSize) {
+                oversizedBatches.incrementAndGet();
+            }
+            batch.forEach(_ -> latch.countDown());
+        }, maxBatchSize, 1000);
+
+        List<BaseEvent> events = new ArrayList<>();
+        for (int i = 0; i < eventCount; i++) {
+            events.add(new SequencedEvent(i));
+        }
+        assertEquals(eventCount, eventBus.publishEvents(events));
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals(0, oversizedBatches.get());
+        assertTrue(batches.get() < eventCount, "Events should have been delivered in batches");
+    }
+
+    @Test
+    public void testSubscriberForSupertypeReceivesEvents() throws InterruptedException {
+        CountDownLatch exactLatch = new CountDownLatch(1);
+        CountDownLatch supertypeLatch = new CountDownLatch(1);
+
+        eventBus.addSubscriber(SequencedEvent.class, _ -> exactLatch.countDown());
+        eventBus.publishEvent(new SequencedEvent(1));
+        assertTrue(exactLatch.await(1, TimeUnit.SECONDS));
+
+        // Registering after the first dispatch must invalidate the cached subscribers
+        eventBus.addSubscriber(BaseEvent.class, _ -> supertypeLatch.countDown());
+        eventBus.publishEvent(new SequencedEvent(2));
+        assertTrue(supertypeLatch.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDefaultOptionsDropForASlowSubscriberInsteadOfStallingOthers() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        int events = 2 * SubscriberOptions.DEFAULT_MAILBOX_CAPACITY;
+        CountDownLatch fastLatch = new CountDownLatch(events);
+        try {
+            eventBus.addSubscriber(SequencedEvent.class, _ -> {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            // Blocks, so the fast subscriber itself never drops
+            eventBus.addSubscriber(SequencedEvent.class, _ -> fastLatch.countDown(), SubscriberOptions.DEFAULT.withBackpressurePolicy(BackpressurePolicy.BLOCK));
+
+            for (int i = 0; i < events; i++) {
+                eventBus.publishEvent(new SequencedEvent(i));
+            }
+
+            assertTrue(fastLatch.await(2, TimeUnit.SECONDS), "The slow subscriber should not hold up the dispatcher");
+            assertTrue(eventBus.metrics().subscriberDropCounts().get("SequencedEvent#1") > 0);
+        } finally {
+            gate.countDown();
+        }
+    }
+
+    @Test
+    public void testConflationDeliversFreshestEventPerKey() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch freshestLatch = new CountDownLatch(2);
+        List<VersionedEvent> received = new CopyOnWriteArrayList<>();
+
+        eventBus.registerCoalescingKey(VersionedEvent.class, event -> ((VersionedEvent) event).source());
+        // A single-slot blocking mailbox stalls the dispatcher while the gate is closed
+        eventBus.addSubscriber(VersionedEvent.class, event -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            VersionedEvent versioned = (VersionedEvent) event;
+            received.add(versioned);
+            if (versioned.version() == 99) {
+                freshestLatch.countDown();
+            }
+        }, SubscriberOptions.DEFAULT.withMailboxCapacity(1).withBackpressurePolicy(BackpressurePolicy.BLOCK));
+
+        for (int version = 0; version < 100; version++) {
+            eventBus.publishEvent(new VersionedEvent("a", version));
+            eventBus.publishEvent(new VersionedEvent("b", version));
+        }
+        gate.countDown();
+
+        // Both sources end on their freshest version, and the stale ones were overwritten in place
+        assertTrue(freshestLatch.await(1, TimeUnit.SECONDS));
+        assertTrue(received.size() < 20, "Stale events should have been conflated, got " + received.size());
+    }
+
+    @Test
+    public void testConflatingSubscriberOnlyLosesSupersededEvents() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(3);
+        List<Integer> received = new CopyOnWriteArrayList<>();
+
+        eventBus.registerCoalescingKey(SequencedEvent.class, event -> ((SequencedEvent) event).sequence() % 2);
+        eventBus.addSubscriber(SequencedEvent.class, event -> {
+            started.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(((SequencedEvent) event).sequence());
+            latch.countDown();
+        }, SubscriberOptions.DEFAULT.withBackpressurePolicy(BackpressurePolicy.CONFLATE));
+
+        eventBus.publishEvent(new SequencedEvent(0));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        for (int i = 1; i <= 10; i++) {
+            eventBus.publishEvent(new SequencedEvent(i));
+        }
+        Thread.sleep(100); // Let the dispatcher hand everything to the mailbox
+        gate.countDown();
+
+        // Each key keeps its latest event; neither key's event displaces the other's
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(List.of(0, 9, 10), received);
+    }
+
+    @Test
+    public void testVirtualThreadDelivery() throws InterruptedException {
+        EventBusImpl virtualBus = EventBusImpl.builder().virtualThreads().build();
+        CountDownLatch latch = new CountDownLatch(1);
+        boolean[] deliveredOnVirtualThread = new boolean[1];
+
+        try {
+            virtualBus.addSubscriber(SequencedEvent.class, _ -> {
+                deliveredOnVirtualThread[0] = Thread.currentThread().isVirtual();
+                latch.countDown();
+            });
+            virtualBus.publishEvent(new SequencedEvent(1));
+
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+            assertTrue(deliveredOnVirtualThread[0]);
+        } finally {
+            virtualBus.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallerExecutorAndInlineDelivery() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(2);
+        try (ExecutorService callerExecutor = Executors.newSingleThreadExecutor()) {
+            EventBusImpl callerBus = EventBusImpl.builder().executor(callerExecutor).build();
+            EventBusImpl inlineBus = EventBusImpl.builder().inlineDelivery().build();
+
+            callerBus.addSubscriber(SequencedEvent.class, _ -> latch.countDown());
+            inlineBus.addSubscriber(SequencedEvent.class, _ -> latch.countDown());
+            callerBus.publishEvent(new SequencedEvent(1));
+            inlineBus.publishEvent(new SequencedEvent(1));
+
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+            callerBus.shutdown();
+            inlineBus.shutdown();
+            assertFalse(callerExecutor.isShutdown(), "The bus must not shut down an executor it does not own");
+        }
+    }
+
+    @Test
+    public void testRejectPolicyReportsFullQueue() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        EventBusImpl boundedBus = EventBusImpl.builder().capacity(2).overflowPolicy(OverflowPolicy.REJECT).build();
+        try {
+            addGatedSubscriber(boundedBus, gate);
+
+            int rejected = 0;
+            for (int i = 0; i < 20; i++) {
+                if (boundedBus.publishEvent(new SequencedEvent(i)) == PublishResult.REJECTED) {
+                    rejected++;
+                }
+            }
+            assertTrue(rejected > 0, "A stalled dispatcher should fill the bounded queue");
+        } finally {
+            gate.countDown();
+            boundedBus.shutdown();
+        }
+    }
+
+    @Test
+    public void testTryPublishAndPublishAsyncUnderBlockPolicy() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        EventBusImpl boundedBus = EventBusImpl.builder().capacity(2).overflowPolicy(OverflowPolicy.BLOCK).build();
+        try {
+            addGatedSubscriber(boundedBus, gate);
+
+            // tryPublish never waits, so it reports the full queue instead of blocking
+            assertEquals(PublishResult.REJECTED, fillWithTryPublish(boundedBus));
+            awaitStalledDispatcher(boundedBus);
+
+            CompletableFuture<PublishResult> pending = boundedBus.publishAsync(new SequencedEvent(100)).toCompletableFuture();
+            assertFalse(pending.isDone(), "publishAsync should wait for room off the caller's thread");
+
+            gate.countDown();
+            assertEquals(PublishResult.ACCEPTED, pending.get(1, TimeUnit.SECONDS));
+        } finally {
+            gate.countDown();
+            boundedBus.shutdown();
+        }
+    }
+
+    @Test
+    public void testSpillPolicyDeliversEverythingInOrder() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(20);
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        EventBusImpl boundedBus = EventBusImpl.builder().capacity(2).overflowPolicy(OverflowPolicy.SPILL).build();
+        try {
+            boundedBus.addSubscriber(SequencedEvent.class, event -> {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(((SequencedEvent) event).sequence());
+                latch.countDown();
+            }, SubscriberOptions.DEFAULT.withMailboxCapacity(1).withBackpressurePolicy(BackpressurePolicy.BLOCK));
+
+            boolean spilled = false;
+            for (int i = 0; i < 20; i++) {
+                PublishResult result = boundedBus.publishEvent(new SequencedEvent(i));
+                assertTrue(result.isAccepted());
+                spilled |= result == PublishResult.SPILLED;
+            }
+            assertTrue(spilled);
+
+            gate.countDown();
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, received.get(i));
+            }
+        } finally {
+            gate.countDown();
+            boundedBus.shutdown();
+        }
+    }
+
+    @Test
+    public void testEventCoalescedWhileItsSlotIsRefusedIsStillDelivered() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        List<VersionedEvent> received = new CopyOnWriteArrayList<>();
+        AtomicReference<Runnable> duringRefusal = new AtomicReference<>();
+        // A full spill tier, which lets another event coalesce into the slot while its publish is being refused
+        Queue<BaseEvent> fullSpillTier = new ConcurrentLinkedQueue<>() {
+            @Override
+            public boolean offer(BaseEvent event) {
+                Runnable action = duringRefusal.getAndSet(null);
+                if (action != null) {
+                    action.run();
+                }
+                return false;
+            }
+        };
+        EventBusImpl boundedBus = EventBusImpl.builder().capacity(2).overflowPolicy(OverflowPolicy.SPILL).spillTier(fullSpillTier).build();
+        try {
+            boundedBus.registerCoalescingKey(VersionedEvent.class, event -> ((VersionedEvent) event).source());
+            boundedBus.addSubscriber(VersionedEvent.class, event -> {
+                received.add((VersionedEvent) event);
+                latch.countDown();
+            });
+            boundedBus.addSubscriber(SequencedEvent.class, _ -> {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, SubscriberOptions.DEFAULT.withMailboxCapacity(1).withBackpressurePolicy(BackpressurePolicy.BLOCK));
+            awaitStalledDispatcher(boundedBus);
+
+            PublishResult[] coalesced = new PublishResult[1];
+            duringRefusal.set(() -> coalesced[0] = boundedBus.publishEvent(new VersionedEvent("a", 2)));
+            assertEquals(PublishResult.REJECTED, boundedBus.publishEvent(new VersionedEvent("a", 1)));
+            assertEquals(PublishResult.COALESCED, coalesced[0]);
+
+            gate.countDown();
+            assertTrue(latch.await(1, TimeUnit.SECONDS), "The coalesced event was accepted, so it must be delivered");
+            assertEquals(List.of(new VersionedEvent("a", 2)), received);
+        } finally {
+            gate.countDown();
+            boundedBus.shutdown();
+        }
+    }
+
+    @Test
+    public void testMetricsCountPublishesErrorsAndLatencies() throws InterruptedException {
+        EventBusMetrics metrics = eventBus.metrics();
+        assertTrue(metrics.subscriberLatencies().isEmpty()); // Switches latency recording on
+
+        CountDownLatch latch = new CountDownLatch(10);
+        eventBus.addSubscriber(SequencedEvent.class, event -> {
+            latch.countDown();
+            if (((SequencedEvent) event).sequence() % 2 == 0) {
+                throw new IllegalStateException("Failing on purpose");
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            eventBus.publishEvent(new SequencedEvent(i));
+        }
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Thread.sleep(50); // Let the last delivery finish recording
+
+        assertEquals(10, metrics.publishedCount());
+        assertEquals(0, metrics.queueDepth());
+        assertEquals(Map.of("SequencedEvent#1", 5L), metrics.subscriberErrorCounts());
+        assertEquals(10, metrics.subscriberLatencies().get("SequencedEvent#1").histogram().values().stream().mapToInt(Integer::intValue).sum());
+        assertTrue(metrics.dispatchLatencies().containsKey(SequencedEvent.class));
+    }
+
+    @Test
+    public void testMetricsAreRegisteredAsMBean() throws Exception {
+        eventBus.addSubscriber(TestEvent.class, _ -> { });
+        eventBus.publishEvent(new TestEvent("counted"));
+        ObjectName name = eventBus.registerMBean("metrics-test");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(1L, server.getAttribute(name, "PublishedCount"));
+        assertNotNull(server.getAttribute(name, "SubscriberLatencyP99Micros"));
+
+        eventBus.shutdown();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testShutdownDeliversPendingEvents() {
+        EventBusImpl drainingBus = EventBusImpl.builder().dispatchMode(DispatchMode.RING).build();
+        AtomicInteger delivered = new AtomicInteger();
+        drainingBus.addSubscriber(SequencedEvent.class, _ -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.incrementAndGet();
+        });
+        for (int i = 0; i < 100; i++) {
+            drainingBus.publishEvent(new SequencedEvent(i));
+        }
+
+        assertEquals(0, drainingBus.shutdown(Duration.ofSeconds(5)));
+        assertEquals(100, delivered.get());
+        assertEquals(PublishResult.CLOSED, drainingBus.publishEvent(new SequencedEvent(100)));
+    }
+
+    @Test
+    public void testShutdownReportsUndeliveredEventsAfterDeadline() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        EventBusImpl stalledBus = EventBusImpl.builder().capacity(4).build();
+        AtomicInteger delivered = new AtomicInteger();
+        stalledBus.addSubscriber(SequencedEvent.class, _ -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.incrementAndGet();
+        }, SubscriberOptions.DEFAULT.withMailboxCapacity(2).withBackpressurePolicy(BackpressurePolicy.BLOCK));
+        for (int i = 0; i < 6; i++) {
+            assertEquals(PublishResult.ACCEPTED, stalledBus.publishEvent(new SequencedEvent(i)));
+        }
+
+        long start = System.nanoTime();
+        int undelivered = stalledBus.shutdown(Duration.ofMillis(200));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "Shutdown should respect the deadline");
+        assertTrue(undelivered > 0);
+        // The interrupted subscriber finishes its current event after shutdown has returned
+        for (int i = 0; i < 100 && delivered.get() + undelivered < 6; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(6, delivered.get() + undelivered);
+    }
+
+    @Test
+    public void testInlineSubscriberRunsOnDispatcherThread() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(2);
+        String[] threads = new String[2];
+        eventBus.addSubscriber(TestEvent.class, _ -> {
+            threads[0] = Thread.currentThread().getName();
+            latch.countDown();
+        }, SubscriberOptions.INLINE);
+        eventBus.addSubscriberForFilteredEvents(TestEvent.class, _ -> true, _ -> {
+            threads[1] = Thread.currentThread().getName();
+            latch.countDown();
+        });
+
+        eventBus.publishEvent(new TestEvent("inline"));
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals("event-bus-dispatcher", threads[0]);
+        assertNotEquals("event-bus-dispatcher", threads[1]);
+    }
+
+    @Test
+    public void testCancelledSubscriptionStopsDelivery() throws InterruptedException {
+        List<String> cancelled = new CopyOnWriteArrayList<>();
+        List<String> kept = new CopyOnWriteArrayList<>();
+        Subscription subscription = eventBus.addSubscriber(TestEvent.class, event -> cancelled.add(((TestEvent) event).message()), SubscriberOptions.INLINE);
+        eventBus.addSubscriber(TestEvent.class, event -> kept.add(((TestEvent) event).message()), SubscriberOptions.INLINE);
+        // Enough short-lived subscriptions to make the dispatch table compact
+        for (int i = 0; i < 100; i++) {
+            eventBus.addSubscriber(TestEvent.class, _ -> fail("Cancelled subscriber was called")).cancel();
+        }
+
+        eventBus.publishEvent(new TestEvent("before"));
+        awaitSize(kept, 1);
+        assertTrue(subscription.isActive());
+        subscription.cancel();
+        subscription.cancel(); // Has no further effect
+        eventBus.publishEvent(new TestEvent("after"));
+        awaitSize(kept, 2);
+
+        assertFalse(subscription.isActive());
+        assertEquals(List.of("before"), cancelled);
+        assertEquals(List.of("before", "after"), kept);
+        assertEquals(1, eventBus.metrics().subscriberErrorCounts().size(), "Cancelled subscribers leave the metrics");
+    }
+
+    @Test
+    public void testWeakSubscriberIsCancelledOnceReclaimed() throws InterruptedException {
+        List<String> received = new CopyOnWriteArrayList<>();
+        Consumer<BaseEvent> strong = event -> received.add(((TestEvent) event).message());
+        Subscription held = eventBus.addSubscriber(TestEvent.class, strong, SubscriberOptions.INLINE.withWeakReference(true));
+        Subscription dropped = addUnreachableWeakSubscriber(eventBus);
+
+        for (int i = 0; i < 50 && dropped.isActive(); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        eventBus.publishEvent(new TestEvent("still held"));
+        awaitSize(received, 1);
+
+        assertFalse(dropped.isActive());
+        assertTrue(held.isActive());
+        assertEquals(List.of("still held"), received);
+        Reference.reachabilityFence(strong);
+    }
+
+    @Test
+    public void testKeyedSubscribersOnlyReceiveTheirKey() throws InterruptedException {
+        int keys = 1_000;
+        assertThrows(IllegalStateException.class, () -> eventBus.addSubscriberForKey(SequencedEvent.class, 0, _ -> { }));
+        eventBus.registerSubscriptionKey(SequencedEvent.class, event -> ((SequencedEvent) event).sequence() % keys);
+
+        CountDownLatch latch = new CountDownLatch(3 * keys + 3);
+        AtomicInteger misrouted = new AtomicInteger();
+        List<Integer> filtered = new CopyOnWriteArrayList<>();
+        for (int key = 0; key < keys; key++) {
+            int expected = key;
+            eventBus.addSubscriberForKey(SequencedEvent.class, key, event -> {
+                if (((SequencedEvent) event).sequence() % keys != expected) {
+                    misrouted.incrementAndGet();
+                }
+                latch.countDown();
+            }, SubscriberOptions.INLINE);
+        }
+        // Predicates still work alongside the index
+        eventBus.addSubscriberForFilteredEvents(SequencedEvent.class, event -> ((SequencedEvent) event).sequence() % keys == 7, event -> {
+            filtered.add(((SequencedEvent) event).sequence());
+            latch.countDown();
+        }, SubscriberOptions.DEFAULT.withBackpressurePolicy(BackpressurePolicy.BLOCK)); // Filtered on delivery, so its mailbox sees every event
+        assertThrows(IllegalStateException.class, () -> eventBus.registerSubscriptionKey(SequencedEvent.class, _ -> "other"));
+
+        for (int i = 0; i < 3 * keys; i++) {
+            eventBus.publishEvent(new SequencedEvent(i));
+        }
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(0, misrouted.get());
+        assertEquals(List.of(7, 1_007, 2_007), filtered);
+    }
+
+    private static Subscription addUnreachableWeakSubscriber(EventBusImpl bus) {
+        List<BaseEvent> received = new ArrayList<>(); // Captured, so the lambda is not a shared constant
+        Consumer<BaseEvent> subscriber = received::add;
+        return bus.addSubscriber(TestEvent.class, subscriber, SubscriberOptions.DEFAULT.withWeakReference(true));
+    }
+
+    private static void awaitSize(List<?> received, int size) throws InterruptedException {
+        for (int i = 0; i < 500 && received.size() < size; i++) {
+            Thread.sleep(1);
+        }
+    }
+
+    // Waits until the queue stays full, i.e. the dispatcher has stopped taking events
+    private static void awaitStalledDispatcher(EventBusImpl bus) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            Thread.sleep(20);
+            if (fillWithTryPublish(bus) == PublishResult.REJECTED && bus.tryPublish(new SequencedEvent(-1)) == PublishResult.REJECTED) {
+                Thread.sleep(20);
+                if (bus.tryPublish(new SequencedEvent(-1)) == PublishResult.REJECTED) {
+                    return;
+                }
+            }
+        }
+        fail("Dispatcher did not stall");
+    }
+
+    private static PublishResult fillWithTryPublish(EventBusImpl bus) {
+        PublishResult result = PublishResult.ACCEPTED;
+        for (int i = 0; i < 20 && result != PublishResult.REJECTED; i++) {
+            result = bus.tryPublish(new SequencedEvent(i));
+        }
+        return result;
+    }
+
+    // Subscriber whose single-slot blocking mailbox stalls the dispatcher until the gate opens
+    private static void addGatedSubscriber(EventBusImpl bus, CountDownLatch gate) {
+        bus.addSubscriber(SequencedEvent.class, _ -> {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, SubscriberOptions.DEFAULT.withMailboxCapacity(1).withBackpressurePolicy(BackpressurePolicy.BLOCK));
+    }
+
+    // Coalescing event keyed by source for testing purposes
+    private record VersionedEvent(String source, int version) implements BaseEvent {
+        public boolean isCoalescing() {
+            return true;
+        }
+    }
+
+    // Non-coalescing event for testing purposes
+    private record SequencedEvent(int sequence) implements BaseEvent {
+        public boolean isCoalescing() {
+            return false;
+        }
+    }
+
     // Test event class for testing purposes
         private record TestEvent(String message) implements BaseEvent {
             public boolean isCoalescing() {
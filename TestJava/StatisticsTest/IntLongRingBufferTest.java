@@ -0,0 +1,134 @@
+package StatisticsTest;
+
+import Statistics.IntLongRingBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntLongRingBufferTest {
+    private IntLongRingBuffer ringBuffer;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    public void setUp() {
+        ringBuffer = new IntLongRingBuffer(5); // Rounded up to 8 slots internally, but holds 5
+    }
+
+    @Test
+    public void testAddAndVisitInOrder() {
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(ringBuffer.add(i, 100L * i));
+        }
+        assertFalse(ringBuffer.add(6, 600)); // Buffer is full
+        assertEquals(5, ringBuffer.size());
+
+        List<String> visited = new ArrayList<>();
+        ringBuffer.forEach((value, timestamp) -> visited.add(value + "@" + timestamp));
+        assertEquals(List.of("1@100", "2@200", "3@300", "4@400", "5@500"), visited);
+    }
+
+    @Test
+    public void testAdvanceTailOlderThan() {
+        for (int i = 1; i <= 5; i++) {
+            ringBuffer.add(i, 100L * i);
+        }
+        int removed = ringBuffer.advanceTailOlderThan(300);
+        assertEquals(2, removed); // Timestamps 100 and 200
+        assertEquals(3, ringBuffer.size());
+
+        // Room again, including across the wrap-around
+        assertTrue(ringBuffer.add(6, 600));
+        assertTrue(ringBuffer.add(7, 700));
+        List<Integer> values = new ArrayList<>();
+        ringBuffer.forEach((value, _) -> values.add(value));
+        assertEquals(List.of(3, 4, 5, 6, 7), values);
+
+        while (ringBuffer.advanceTail()) {
+            removed++;
+        }
+        assertEquals(7, removed);
+        assertEquals(0, ringBuffer.size());
+    }
+
+    @Test
+    public void testEvictedPairsAndVisitsFromPosition() {
+        for (int i = 1; i <= 3; i++) {
+            ringBuffer.add(i, 100L * i);
+        }
+        List<Integer> visited = new ArrayList<>();
+        long next = ringBuffer.forEachFrom(0, (value, _) -> visited.add(value));
+        assertEquals(3, next);
+
+        ringBuffer.add(4, 400);
+        next = ringBuffer.forEachFrom(next, (value, _) -> visited.add(value)); // Only the new pair
+        assertEquals(List.of(1, 2, 3, 4), visited);
+
+        List<String> evicted = new ArrayList<>();
+        assertEquals(2, ringBuffer.advanceTailOlderThan(300, (value, timestamp) -> evicted.add(value + "@" + timestamp)));
+        assertEquals(List.of("1@100", "2@200"), evicted);
+        assertEquals(2, ringBuffer.tailPosition());
+        assertEquals(4, ringBuffer.forEachFrom(0, (_, _) -> { })); // Starts from the oldest remaining pair
+        assertEquals(next, ringBuffer.forEachFrom(next, (_, _) -> fail("Nothing new was added")));
+    }
+
+    @Test
+    public void testConcurrentProducersLoseNothing() throws InterruptedException {
+        int producers = 8;
+        int perProducer = 10_000;
+        IntLongRingBuffer shared = new IntLongRingBuffer(producers * perProducer);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    assertTrue(shared.add(producer * perProducer + i, i));
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        boolean[] seen = new boolean[producers * perProducer];
+        shared.forEach((value, timestamp) -> {
+            assertEquals(value % perProducer, timestamp); // Value and timestamp stay paired
+            seen[value] = true;
+        });
+        for (boolean found : seen) {
+            assertTrue(found);
+        }
+    }
+
+    @Test
+    public void testMappedRingSurvivesReopening() throws IOException {
+        Path file = directory.resolve("window.ring");
+        try (IntLongRingBuffer mapped = IntLongRingBuffer.openMapped(file, 5, 0)) {
+            for (int i = 1; i <= 5; i++) {
+                assertTrue(mapped.add(i, 100L * i));
+            }
+            assertThrows(IllegalStateException.class, () -> IntLongRingBuffer.openMapped(file, 5, 0));
+        }
+
+        try (IntLongRingBuffer reopened = IntLongRingBuffer.openMapped(file, 5, 300)) {
+            List<String> visited = new ArrayList<>();
+            reopened.forEach((value, timestamp) -> visited.add(value + "@" + timestamp));
+            assertEquals(List.of("3@300", "4@400", "5@500"), visited); // Older pairs are discarded
+            assertTrue(reopened.add(6, 600));
+        }
+
+        try (IntLongRingBuffer smaller = IntLongRingBuffer.openMapped(file, 2, 0)) {
+            List<Integer> values = new ArrayList<>();
+            smaller.forEach((value, _) -> values.add(value));
+            assertEquals(List.of(5, 6), values); // The newest pairs that fit are kept
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package StatisticsTest;
+
+import Statistics.BaseEvent;
+import Statistics.EventBusImpl;
+import Statistics.EventCodec;
+import Statistics.EventJournal;
+import Statistics.JournaledEventBus;
+import Statistics.PublishResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournaledEventBusTest {
+    private static final EventCodec PRICE_CODEC = new PriceCodec();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testPublishedEventsAreDeliveredAndJournaled() throws IOException, InterruptedException {
+        JournaledEventBus eventBus = new JournaledEventBus(new EventBusImpl(), new EventJournal(directory, PRICE_CODEC));
+        try {
+            CountDownLatch latch = new CountDownLatch(3);
+            eventBus.addSubscriber(PriceEvent.class, _ -> latch.countDown());
+            for (int i = 0; i < 3; i++) {
+                eventBus.publishEvent(new PriceEvent("ABC", 100 + i));
+            }
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+
+            List<PriceEvent> replayed = new ArrayList<>();
+            assertEquals(2, eventBus.replay(1, (_, _, event) -> replayed.add((PriceEvent) event)));
+            assertEquals(List.of(new PriceEvent("ABC", 101), new PriceEvent("ABC", 102)), replayed);
+        } finally {
+            eventBus.shutdown();
+        }
+    }
+
+    @Test
+    public void testJournalRollsSegmentsAndSurvivesReopening() throws IOException {
+        int events = 200;
+        try (EventJournal journal = new EventJournal(directory, PRICE_CODEC, 512)) {
+            for (int i = 0; i < events; i++) {
+                assertEquals(i, journal.append(new PriceEvent("SYM" + (i % 7), i)));
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() > 1, "A small segment size should roll over to several files");
+        }
+
+        try (EventJournal reopened = new EventJournal(directory, PRICE_CODEC, 512)) {
+            assertEquals(events - 1, reopened.lastSequence());
+            assertEquals(events, reopened.append(new PriceEvent("NEW", -1)));
+
+            List<Long> sequences = new ArrayList<>();
+            reopened.replay(150, (sequence, _, event) -> {
+                assertEquals(sequence == events ? -1 : sequence, ((PriceEvent) event).price());
+                sequences.add(sequence);
+            });
+            assertEquals(events + 1 - 150, sequences.size());
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals(150 + i, sequences.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testJournalDeletesSegmentsBeyondItsRetention() throws IOException {
+        int events = 200;
+        try (EventJournal journal = new EventJournal(directory, PRICE_CODEC, 512, 3)) {
+            for (int i = 0; i < events; i++) {
+                journal.append(new PriceEvent("SYM" + (i % 7), i));
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(3, files.count());
+            }
+
+            long first = journal.firstSequence();
+            assertTrue(first > 0, "The oldest segments should have been deleted");
+            List<Long> sequences = new ArrayList<>();
+            assertEquals(events - first, journal.replay(0, (sequence, _, _) -> sequences.add(sequence)));
+            assertEquals(first, sequences.getFirst());
+            assertEquals(events - 1, sequences.getLast());
+        }
+
+        try (EventJournal reopened = new EventJournal(directory, PRICE_CODEC, 512, 2)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(2, files.count(), "Reopening with a tighter bound should delete the excess");
+            }
+            assertEquals(events - 1, reopened.lastSequence());
+        }
+    }
+
+    @Test
+    public void testReplaySinceTimestamp() throws IOException, InterruptedException {
+        try (EventJournal journal = new EventJournal(directory, PRICE_CODEC, 1024)) {
+            for (int i = 0; i < 50; i++) {
+                journal.append(new PriceEvent("OLD", i));
+            }
+            Thread.sleep(20);
+            Instant cutOff = Instant.now();
+            Thread.sleep(20);
+            for (int i = 0; i < 50; i++) {
+                journal.append(new PriceEvent("NEW", i));
+            }
+
+            List<String> symbols = new ArrayList<>();
+            assertEquals(50, journal.replaySince(cutOff.toEpochMilli(), (_, timestamp, event) -> {
+                assertTrue(timestamp >= cutOff.toEpochMilli());
+                symbols.add(((PriceEvent) event).symbol());
+            }));
+            assertTrue(symbols.stream().allMatch("NEW"::equals));
+        }
+    }
+
+    @Test
+    public void testConcurrentAppendsGetConsecutiveSequences() throws IOException, InterruptedException {
+        int threads = 4;
+        int perThread = 500;
+        try (EventJournal journal = new EventJournal(directory, PRICE_CODEC, 1024)) {
+            Thread[] appenders = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                appenders[t] = Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        journal.append(new PriceEvent("T" + id, i));
+                    }
+                });
+            }
+            for (Thread appender : appenders) {
+                appender.join();
+            }
+
+            assertEquals(threads * perThread - 1, journal.lastSequence());
+            List<Long> sequences = new ArrayList<>();
+            long[] lastPrice = {-1, -1, -1, -1};
+            journal.replay(0, (sequence, _, event) -> {
+                PriceEvent price = (PriceEvent) event;
+                int id = Integer.parseInt(price.symbol().substring(1));
+                assertTrue(price.price() > lastPrice[id], "Each appender's events must stay in order");
+                lastPrice[id] = price.price();
+                sequences.add(sequence);
+            });
+            assertEquals(threads * perThread, sequences.size());
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals(i, sequences.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testPublishingWhileShuttingDownReportsClosed() throws IOException, InterruptedException {
+        JournaledEventBus eventBus = new JournaledEventBus(new EventBusImpl(), new EventJournal(directory, PRICE_CODEC, 4096));
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        Thread[] publishers = new Thread[2];
+        for (int t = 0; t < publishers.length; t++) {
+            publishers[t] = Thread.ofPlatform().start(() -> {
+                try {
+                    while (eventBus.publishEvent(new PriceEvent("ABC", 1)) != PublishResult.CLOSED) {
+                        Thread.onSpinWait();
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+        }
+        Thread.sleep(20);
+        eventBus.shutdown();
+        for (Thread publisher : publishers) {
+            publisher.join(5_000);
+        }
+        assertEquals(List.of(), failures);
+
+        try (EventJournal reopened = new EventJournal(directory, PRICE_CODEC, 4096)) {
+            long[] expected = {0};
+            reopened.replay(0, (sequence, _, _) -> assertEquals(expected[0]++, sequence));
+            assertEquals(reopened.lastSequence() + 1, expected[0], "Every journaled event must be complete");
+        }
+    }
+
+    private record PriceEvent(String symbol, long price) implements BaseEvent {
+        @Override
+        public boolean isCoalescing() {
+            return false;
+        }
+    }
+
+    private static final class PriceCodec implements EventCodec {
+        @Override
+        public void encode(BaseEvent event, ByteBuffer target) {
+            PriceEvent price = (PriceEvent) event;
+            byte[] symbol = price.symbol().getBytes(StandardCharsets.UTF_8);
+            target.putInt(symbol.length).put(symbol).putLong(price.price());
+        }
+
+        @Override
+        public BaseEvent decode(ByteBuffer source) {
+            byte[] symbol = new byte[source.getInt()];
+            source.get(symbol);
+            return new PriceEvent(new String(symbol, StandardCharsets.UTF_8), source.getLong());
+        }
+    }
+}
@@ -1,9 +1,18 @@
 package StatisticsTest;
 
 import Statistics.LockFreeRingBuffer;
+import Statistics.WaitStrategy;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class LockFreeRingBufferTest {
@@ -95,4 +104,159 @@ public class LockFreeRingBufferTest {
         ringBuffer.advanceTail(); // Remove the oldest element
         assertEquals(1, ringBuffer.size()); // Size should be 1
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBulkRemoval() {
+        for (int i = 1; i <= 5; i++) {
+            ringBuffer.add(i);
+        }
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, ringBuffer.drainTo(drained::add, 2));
+        assertEquals(List.of(1, 2), drained);
+
+        assertEquals(1, ringBuffer.advanceTailUntil(value -> value >= 4));
+        assertEquals(4, ringBuffer.get(0));
+
+        assertTrue(ringBuffer.add(6));
+        assertEquals(3, ringBuffer.advanceTailBy(10)); // Only 3 left
+        assertEquals(0, ringBuffer.size());
+        assertEquals(0, ringBuffer.drainTo(drained::add, 10));
+    }
+
+    @Test
+    public void testSnapshotDetectsRemovals() {
+        ringBuffer.add(1);
+        ringBuffer.add(2);
+        ringBuffer.add(3);
+
+        LockFreeRingBuffer<Integer>.Snapshot snapshot = ringBuffer.snapshot();
+        List<Integer> read = new ArrayList<>();
+        snapshot.forEach(read::add);
+        assertEquals(List.of(1, 2, 3), read);
+        assertEquals(3, snapshot.endSequence() - snapshot.firstSequence());
+        assertTrue(snapshot.isValid());
+
+        ringBuffer.add(4); // Adding does not disturb the items in view
+        assertTrue(snapshot.isValid());
+        ringBuffer.advanceTail();
+        assertFalse(snapshot.isValid());
+        assertEquals(List.of(2, 3, 4), toList(ringBuffer.snapshot()));
+    }
+
+    private static List<Integer> toList(Iterable<Integer> values) {
+        List<Integer> list = new ArrayList<>();
+        values.forEach(list::add);
+        return list;
+    }
+
+    @Test
+    public void testBlockingConsumersWithEachWaitStrategy() throws InterruptedException {
+        List<WaitStrategy> strategies = List.of(WaitStrategy.busySpin(), WaitStrategy.spinThenYield(),
+                WaitStrategy.park(), WaitStrategy.timedPark(Duration.ofMillis(1)));
+        for (WaitStrategy strategy : strategies) {
+            LockFreeRingBuffer<Integer> waited = new LockFreeRingBuffer<>(16, strategy);
+            assertNull(waited.poll(5, TimeUnit.MILLISECONDS)); // Times out when nothing arrives
+
+            Thread producer = Thread.ofPlatform().start(() -> {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                waited.add(1);
+                waited.add(2);
+            });
+            assertEquals(1, waited.take());
+            List<Integer> rest = new ArrayList<>();
+            assertEquals(1, waited.drainTo(rest::add, 10, 1, TimeUnit.SECONDS));
+            assertEquals(List.of(2), rest);
+            producer.join();
+        }
+    }
+
+    @Test
+    public void testWaitingConsumerCanBeInterrupted() throws InterruptedException {
+        LockFreeRingBuffer<Integer> waited = new LockFreeRingBuffer<>(16, WaitStrategy.park());
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Thread consumer = Thread.ofPlatform().start(() -> {
+            try {
+                waited.take();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        Thread.sleep(20);
+        consumer.interrupt();
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConcurrentProducersLoseNothing() throws InterruptedException {
+        int producers = 8;
+        int perProducer = 10_000;
+        LockFreeRingBuffer<Integer> shared = new LockFreeRingBuffer<>(producers * perProducer);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    assertTrue(shared.add(producer * perProducer + i));
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(producers * perProducer, shared.size());
+        assertFalse(shared.add(-1)); // Full at exactly the requested capacity
+        boolean[] seen = new boolean[producers * perProducer];
+        int[] lastPerProducer = new int[producers];
+        Arrays.fill(lastPerProducer, -1);
+        for (Integer value : shared) {
+            assertFalse(seen[value], "Duplicate " + value);
+            seen[value] = true;
+            int producer = value / perProducer;
+            assertTrue(value % perProducer > lastPerProducer[producer], "Each producer's items stay in order");
+            lastPerProducer[producer] = value % perProducer;
+        }
+        for (boolean found : seen) {
+            assertTrue(found);
+        }
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumer() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 10_000;
+        LockFreeRingBuffer<Integer> shared = new LockFreeRingBuffer<>(64); // Forces many laps
+        AtomicInteger consumed = new AtomicInteger();
+        Thread consumer = Thread.ofPlatform().start(() -> {
+            while (consumed.get() < producers * perProducer) {
+                if (shared.get(0) != null && shared.advanceTail()) {
+                    consumed.incrementAndGet();
+                } else {
+                    Thread.yield();
+                }
+            }
+        });
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!shared.add(i)) {
+                        Thread.yield(); // Full, let the consumer catch up
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        consumer.join(10_000);
+
+        assertEquals(producers * perProducer, consumed.get());
+        assertEquals(0, shared.size());
+        assertFalse(shared.advanceTail());
+    }
+}
@@ -0,0 +1,74 @@
+package StatisticsTest;
+
+import Statistics.LogLinearHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogLinearHistogramTest {
+
+    @Test
+    public void testPercentilesWeighCounts() {
+        LogLinearHistogram histogram = new LogLinearHistogram(1L << 31, 2);
+        histogram.record(1, 98);
+        histogram.record(2);
+        histogram.record(100);
+
+        assertEquals(100, histogram.totalCount());
+        assertEquals(1, histogram.valueAtPercentile(50));
+        assertEquals(1, histogram.valueAtPercentile(98));
+        assertEquals(2, histogram.valueAtPercentile(99));
+        assertEquals(100, histogram.valueAtPercentile(100));
+        assertEquals(1, histogram.valueAtPercentile(0));
+        assertEquals(1, histogram.mode());
+    }
+
+    @Test
+    public void testLargeValuesKeepTheirSignificantDigits() {
+        LogLinearHistogram histogram = new LogLinearHistogram(1L << 40, 3);
+        long[] values = {2_047, 123_456, 987_654_321, 1L << 40};
+        for (long value : values) {
+            histogram.record(value);
+            long reported = histogram.valueAtPercentile(100);
+            assertTrue(reported >= value && reported <= value + value / 1000, value + " reported as " + reported);
+            histogram.reset();
+        }
+        assertThrows(IllegalArgumentException.class, () -> histogram.record((1L << 40) + (1L << 35)));
+        assertThrows(IllegalArgumentException.class, () -> new LogLinearHistogram(1000, 0));
+    }
+
+    @Test
+    public void testNegativeValuesAndVisitOrder() {
+        LogLinearHistogram histogram = new LogLinearHistogram(1000, 2);
+        for (long value : new long[]{5, -3, 0, -3, 7}) {
+            histogram.record(value);
+        }
+        List<String> visited = new ArrayList<>();
+        histogram.forEach((value, count) -> visited.add(value + "x" + count));
+        assertEquals(List.of("-3x2", "0x1", "5x1", "7x1"), visited);
+        assertEquals(-3, histogram.valueAtPercentile(40));
+        assertEquals(0, histogram.valueAtPercentile(60));
+        assertEquals(-3, histogram.mode());
+    }
+
+    @Test
+    public void testAddAndSubtract() {
+        LogLinearHistogram first = new LogLinearHistogram(1000, 2);
+        LogLinearHistogram second = new LogLinearHistogram(1000, 2);
+        first.record(10, 3);
+        second.record(20, 2);
+        second.record(-1);
+
+        LogLinearHistogram merged = first.copy();
+        merged.add(second);
+        assertEquals(6, merged.totalCount());
+        assertEquals(20, merged.valueAtPercentile(100));
+
+        merged.subtract(second);
+        assertEquals(first, merged);
+        assertThrows(IllegalArgumentException.class, () -> merged.add(new LogLinearHistogram(1000, 3)));
+    }
+}
@@ -0,0 +1,133 @@
+package StatisticsTest;
+
+import Statistics.QuantileSketch;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QuantileSketchTest {
+    private static final List<Supplier<QuantileSketch>> KINDS = List.of(
+            () -> QuantileSketch.tDigest(100),
+            () -> QuantileSketch.kll(200),
+            () -> QuantileSketch.ddSketch(0.01));
+    private static final double[] QUANTILES = {0.1, 0.5, 0.9, 0.99};
+
+    @Test
+    public void testQuantilesOfLatenciesStayWithinRankError() {
+        double[] latencies = latencies(100_000, 1);
+        double[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        for (Supplier<QuantileSketch> kind : KINDS) {
+            QuantileSketch sketch = kind.get();
+            for (double latency : latencies) {
+                sketch.add(latency);
+            }
+            assertEquals(latencies.length, sketch.count());
+            for (double quantile : QUANTILES) {
+                double estimate = sketch.quantile(quantile);
+                double rank = rankOf(sorted, estimate);
+                assertEquals(quantile, rank, 0.02, sketch.getClass().getSimpleName() + " at q=" + quantile);
+            }
+        }
+    }
+
+    @Test
+    public void testMergedSketchesMatchOneSketchOfEverything() {
+        double[] latencies = latencies(40_000, 2);
+        double[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        for (Supplier<QuantileSketch> kind : KINDS) {
+            QuantileSketch[] parts = new QuantileSketch[4];
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = kind.get();
+            }
+            for (int i = 0; i < latencies.length; i++) {
+                parts[i % parts.length].add(latencies[i]);
+            }
+            QuantileSketch merged = parts[0].emptyCopy();
+            for (QuantileSketch part : parts) {
+                merged.merge(part);
+            }
+            assertEquals(latencies.length, merged.count());
+            for (double quantile : QUANTILES) {
+                assertEquals(quantile, rankOf(sorted, merged.quantile(quantile)), 0.02, merged.getClass().getSimpleName() + " at q=" + quantile);
+            }
+        }
+    }
+
+    @Test
+    public void testMergingASketchIntoItselfDoublesEveryCount() {
+        double[] latencies = latencies(10_000, 4);
+        double[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        for (Supplier<QuantileSketch> kind : KINDS) {
+            QuantileSketch sketch = kind.get();
+            for (double latency : latencies) {
+                sketch.add(latency);
+            }
+            sketch.merge(sketch);
+            assertEquals(2L * latencies.length, sketch.count());
+            for (double quantile : QUANTILES) {
+                assertEquals(quantile, rankOf(sorted, sketch.quantile(quantile)), 0.02, sketch.getClass().getSimpleName() + " at q=" + quantile);
+            }
+        }
+    }
+
+    @Test
+    public void testSerializedFormRoundTrips() {
+        double[] latencies = latencies(10_000, 3);
+        for (Supplier<QuantileSketch> kind : KINDS) {
+            QuantileSketch sketch = kind.get();
+            for (double latency : latencies) {
+                sketch.add(latency);
+            }
+            sketch.add(-5);
+            sketch.add(0);
+            byte[] bytes = sketch.toBytes();
+            assertTrue(bytes.length < 16 * 1024, sketch.getClass().getSimpleName() + " takes " + bytes.length + " bytes");
+
+            QuantileSketch copy = QuantileSketch.fromBytes(ByteBuffer.wrap(bytes));
+            assertEquals(sketch.getClass(), copy.getClass());
+            assertEquals(sketch.count(), copy.count());
+            for (double quantile : new double[]{0, 0.25, 0.5, 0.75, 0.999, 1}) {
+                assertEquals(sketch.quantile(quantile), copy.quantile(quantile), 1e-9 * Math.abs(sketch.quantile(quantile)));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.fromBytes(ByteBuffer.wrap(new byte[]{42})));
+    }
+
+    @Test
+    public void testOnlyMatchingSketchesMerge() {
+        assertTrue(Double.isNaN(QuantileSketch.kll(200).quantile(0.5)));
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.tDigest(100).merge(QuantileSketch.tDigest(200)));
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.kll(200).merge(QuantileSketch.ddSketch(0.01)));
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.ddSketch(0.01).merge(QuantileSketch.ddSketch(0.02)));
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.ddSketch(1.5));
+    }
+
+    /**
+     * Log-normally distributed latencies in nanoseconds, from a few microseconds to seconds.
+     */
+    private static double[] latencies(int count, long seed) {
+        Random random = new Random(seed);
+        double[] latencies = new double[count];
+        for (int i = 0; i < count; i++) {
+            latencies[i] = Math.exp(11 + 2 * random.nextGaussian());
+        }
+        return latencies;
+    }
+
+    /**
+     * @return the fraction of the sorted values below the given value
+     */
+    private static double rankOf(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        return (index >= 0 ? index : -index - 1) / (double) sorted.length;
+    }
+}
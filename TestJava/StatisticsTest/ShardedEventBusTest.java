@@ -0,0 +1,128 @@
+package StatisticsTest;
+
+import Statistics.BackpressurePolicy;
+import Statistics.BaseEvent;
+import Statistics.EventBusImpl;
+import Statistics.ShardedEventBus;
+import Statistics.SubscriberOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedEventBusTest {
+    private static final int LANES = 4;
+
+    private ShardedEventBus eventBus;
+
+    @BeforeEach
+    public void setUp() {
+        eventBus = new ShardedEventBus(LANES, () -> EventBusImpl.builder().threadPool(2).build());
+        eventBus.registerPartitionKey(KeyedEvent.class, event -> ((KeyedEvent) event).key());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        eventBus.shutdown();
+    }
+
+    @Test
+    public void testEventsWithTheSameKeyKeepTheirOrder() throws InterruptedException {
+        int keys = 16;
+        int eventsPerKey = 500;
+        CountDownLatch latch = new CountDownLatch(keys * eventsPerKey);
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        eventBus.addSubscriber(KeyedEvent.class, event -> {
+            KeyedEvent keyed = (KeyedEvent) event;
+            received.computeIfAbsent(keyed.key(), _ -> new CopyOnWriteArrayList<>()).add(keyed.sequence());
+            latch.countDown();
+        }, SubscriberOptions.DEFAULT.withBackpressurePolicy(BackpressurePolicy.BLOCK)); // Every event must arrive
+
+        for (int i = 0; i < eventsPerKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                eventBus.publishEvent(new KeyedEvent("key-" + k, i));
+            }
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(keys, received.size());
+        for (List<Integer> sequences : received.values()) {
+            for (int i = 0; i < eventsPerKey; i++) {
+                assertEquals(i, sequences.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testEventsAreRoutedByKeyAcrossLanes() {
+        boolean[] usedLanes = new boolean[LANES];
+        for (int k = 0; k < 64; k++) {
+            KeyedEvent event = new KeyedEvent("key-" + k, 0);
+            int lane = eventBus.laneOf(event);
+            assertEquals(lane, eventBus.laneOf(new KeyedEvent("key-" + k, 1)), "Same key must map to the same lane");
+            usedLanes[lane] = true;
+        }
+        for (boolean used : usedLanes) {
+            assertTrue(used, "Keys should spread over every lane");
+        }
+    }
+
+    @Test
+    public void testBatchPublishIsSplitAcrossLanes() throws InterruptedException {
+        List<BaseEvent> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(new KeyedEvent("key-" + (i % 10), i));
+        }
+        CountDownLatch latch = new CountDownLatch(batch.size());
+        eventBus.addSubscriber(KeyedEvent.class, _ -> latch.countDown());
+
+        assertEquals(batch.size(), eventBus.publishEvents(batch));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSubscriberIsNotCalledConcurrentlyByDifferentLanes() throws InterruptedException {
+        ShardedEventBus defaultBus = new ShardedEventBus(LANES);
+        defaultBus.registerPartitionKey(KeyedEvent.class, event -> ((KeyedEvent) event).key());
+        int events = 400;
+        CountDownLatch latch = new CountDownLatch(events);
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        defaultBus.addSubscriber(KeyedEvent.class, _ -> {
+            if (inside.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            LockSupport.parkNanos(20_000);
+            inside.decrementAndGet();
+            latch.countDown();
+        }, SubscriberOptions.DEFAULT.withBackpressurePolicy(BackpressurePolicy.BLOCK));
+
+        try {
+            for (int i = 0; i < events; i++) {
+                defaultBus.publishEvent(new KeyedEvent("key-" + (i % 16), i));
+            }
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(0, overlaps.get(), "Lanes must take turns calling a subscriber");
+        } finally {
+            defaultBus.shutdown();
+        }
+    }
+
+    private record KeyedEvent(String key, int sequence) implements BaseEvent {
+        @Override
+        public boolean isCoalescing() {
+            return false;
+        }
+    }
+}
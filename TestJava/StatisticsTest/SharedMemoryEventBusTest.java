@@ -0,0 +1,185 @@
+package StatisticsTest;
+
+import Statistics.BaseEvent;
+import Statistics.EventBusImpl;
+import Statistics.EventCodec;
+import Statistics.PublishResult;
+import Statistics.SharedMemoryEventBus;
+import Statistics.SubscriberOptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SharedMemoryEventBusTest {
+    private static final EventCodec TICK_CODEC = new TickCodec();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testReadersReceiveEventsInPublishOrder() throws IOException, InterruptedException {
+        Path file = directory.resolve("ticks.ring");
+        SharedMemoryEventBus writer = SharedMemoryEventBus.writer(file, 64 * 1024, TICK_CODEC, new EventBusImpl());
+        SharedMemoryEventBus firstReader = SharedMemoryEventBus.reader(file, TICK_CODEC);
+        SharedMemoryEventBus secondReader = SharedMemoryEventBus.reader(file, TICK_CODEC);
+        try {
+            int events = 5_000; // Several laps of the ring
+            CountDownLatch latch = new CountDownLatch(2 * events);
+            List<Long> first = new CopyOnWriteArrayList<>();
+            List<Long> second = new CopyOnWriteArrayList<>();
+            firstReader.addSubscriber(TickEvent.class, event -> {
+                first.add(((TickEvent) event).value());
+                latch.countDown();
+            }, SubscriberOptions.INLINE);
+            secondReader.addSubscriber(TickEvent.class, event -> {
+                second.add(((TickEvent) event).value());
+                latch.countDown();
+            }, SubscriberOptions.INLINE);
+
+            for (int i = 0; i < events; i++) {
+                assertEquals(PublishResult.ACCEPTED, writer.publishEvent(new TickEvent(i)));
+                if (i % 500 == 499) {
+                    awaitSize(first, i + 1); // Keep the writer from lapping the readers
+                    awaitSize(second, i + 1);
+                }
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < events; i++) {
+                assertEquals(i, first.get(i));
+                assertEquals(i, second.get(i));
+            }
+            assertEquals(0, firstReader.lostEvents());
+            assertEquals(PublishResult.REJECTED, firstReader.publishEvent(new TickEvent(-1)));
+            assertEquals(PublishResult.REJECTED, firstReader.tryPublish(new TickEvent(-1)));
+            assertEquals(PublishResult.REJECTED, firstReader.publishAsync(new TickEvent(-1)).toCompletableFuture().join());
+        } finally {
+            firstReader.shutdown();
+            secondReader.shutdown();
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    public void testOnlyOneWriterPerRing() throws IOException {
+        Path file = directory.resolve("single-writer.ring");
+        SharedMemoryEventBus writer = SharedMemoryEventBus.writer(file, 4096, TICK_CODEC, new EventBusImpl());
+        try {
+            assertThrows(IllegalStateException.class, () -> SharedMemoryEventBus.writer(file, 4096, TICK_CODEC, new EventBusImpl()));
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    public void testLappedReaderSkipsAheadAndCountsLostEvents() throws IOException, InterruptedException {
+        Path file = directory.resolve("lapped.ring");
+        SharedMemoryEventBus writer = SharedMemoryEventBus.writer(file, 4096, TICK_CODEC, new EventBusImpl());
+        // A one-slot local queue makes the reader thread wait for the stalled subscriber
+        SharedMemoryEventBus reader = SharedMemoryEventBus.reader(file, TICK_CODEC, EventBusImpl.builder().capacity(1).build());
+        CountDownLatch gate = new CountDownLatch(1);
+        try {
+            List<Long> received = new CopyOnWriteArrayList<>();
+            reader.addSubscriber(TickEvent.class, event -> {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.add(((TickEvent) event).value());
+            }, SubscriberOptions.INLINE);
+
+            for (int i = 0; i < 2_000; i++) {
+                writer.publishEvent(new TickEvent(i));
+            }
+            gate.countDown();
+
+            // The lapped reader rejoins at the newest event, so keep publishing until it gets there
+            long next = 2_000;
+            for (int i = 0; i < 200 && (received.isEmpty() || received.getLast() < 2_000); i++) {
+                writer.publishEvent(new TickEvent(next++));
+                Thread.sleep(5);
+            }
+            assertTrue(received.getLast() >= 2_000);
+            assertTrue(reader.lostEvents() > 0);
+            for (int i = 1; i < received.size(); i++) {
+                assertTrue(received.get(i) > received.get(i - 1), "Events must stay in order after skipping");
+            }
+        } finally {
+            gate.countDown();
+            reader.shutdown();
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    public void testReaderSkipsAnEventItCannotDecode() throws IOException, InterruptedException {
+        Path file = directory.resolve("undecodable.ring");
+        EventCodec failingOnThree = new TickCodec() {
+            @Override
+            public BaseEvent decode(ByteBuffer source) {
+                TickEvent event = (TickEvent) super.decode(source);
+                if (event.value() == 3) {
+                    throw new IllegalArgumentException("Cannot decode " + event.value());
+                }
+                return event;
+            }
+        };
+        SharedMemoryEventBus writer = SharedMemoryEventBus.writer(file, 4096, TICK_CODEC, new EventBusImpl());
+        SharedMemoryEventBus reader = SharedMemoryEventBus.reader(file, failingOnThree);
+        try {
+            CountDownLatch latch = new CountDownLatch(9);
+            List<Long> received = new CopyOnWriteArrayList<>();
+            reader.addSubscriber(TickEvent.class, event -> {
+                received.add(((TickEvent) event).value());
+                latch.countDown();
+            }, SubscriberOptions.INLINE);
+
+            for (int i = 0; i < 10; i++) {
+                writer.publishEvent(new TickEvent(i));
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS), "The reader must keep going after an undecodable event");
+            assertEquals(List.of(0L, 1L, 2L, 4L, 5L, 6L, 7L, 8L, 9L), received);
+            assertEquals(1, reader.undeliverableEvents());
+            assertEquals(0, reader.lostEvents());
+        } finally {
+            reader.shutdown();
+            writer.shutdown();
+        }
+    }
+
+    private static void awaitSize(List<Long> received, int size) throws InterruptedException {
+        for (int i = 0; i < 500 && received.size() < size; i++) {
+            Thread.sleep(1);
+        }
+    }
+
+    private record TickEvent(long value) implements BaseEvent {
+        @Override
+        public boolean isCoalescing() {
+            return false;
+        }
+    }
+
+    private static class TickCodec implements EventCodec {
+        @Override
+        public void encode(BaseEvent event, ByteBuffer target) {
+            target.putLong(((TickEvent) event).value());
+        }
+
+        @Override
+        public BaseEvent decode(ByteBuffer source) {
+            return new TickEvent(source.getLong());
+        }
+    }
+}
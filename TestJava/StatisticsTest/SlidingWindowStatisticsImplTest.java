@@ -2,15 +2,23 @@ package StatisticsTest;
 
 import Statistics.EventBus;
 import Statistics.EventBusImpl;
+import Statistics.QuantileSketch;
 import Statistics.SlidingWindowStatistics;
 import Statistics.SlidingWindowStatisticsImpl;
+import Statistics.SketchStatistics;
+import Statistics.StatisticsImpl;
 import Statistics.Throttler;
 import Statistics.ThrottlerImpl; // Assuming you have a ThrottlerImpl class
+import Statistics.WaitStrategy;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -104,6 +112,24 @@ public class SlidingWindowStatisticsImplTest {
         assertTrue(latch.await(1, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testPublishesAsSoonAsMeasurementsArrive() throws InterruptedException {
+        EventBus eventBus = new EventBusImpl();
+        SlidingWindowStatisticsImpl eventDriven = new SlidingWindowStatisticsImpl(eventBus,
+                new ThrottlerImpl(maxMeasurementsPerSecond, 1000), ringBufferCapacity, WaitStrategy.park());
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            eventDriven.subscribeForStatistics(stats -> stats.getMean() == 7.0, _ -> latch.countDown());
+
+            eventDriven.add(7);
+
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+        } finally {
+            eventDriven.shutdown();
+            eventBus.shutdown();
+        }
+    }
+
     @Test
     public void testMeanWithNoMeasurements() {
         SlidingWindowStatistics.Statistics stats = statistics.getLatestStatistics();
@@ -166,4 +192,146 @@ public class SlidingWindowStatisticsImplTest {
             assertEquals(measurementsPerThread, histogram.getOrDefault(i, 0), "Count for measurement " + i + " should be " + measurementsPerThread);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPersistentWindowResumesAfterRestart(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("measurements.ring");
+        SlidingWindowStatisticsImpl beforeRestart = SlidingWindowStatisticsImpl.persistent(new EventBusImpl(), null, file, ringBufferCapacity);
+        for (int i = 1; i <= 5; i++) {
+            beforeRestart.add(i);
+        }
+        beforeRestart.shutdown();
+
+        SlidingWindowStatisticsImpl afterRestart = SlidingWindowStatisticsImpl.persistent(new EventBusImpl(), null, file, ringBufferCapacity);
+        try {
+            SlidingWindowStatistics.Statistics stats = afterRestart.getLatestStatistics();
+            assertEquals(3.0, stats.getMean(), 0.01);
+            assertEquals(5, stats.getPctile(100));
+        } finally {
+            afterRestart.shutdown();
+        }
+    }
+
+    @Test
+    public void testAggregatesFollowMeasurementsInAndOutOfTheWindow() throws InterruptedException {
+        SlidingWindowStatisticsImpl pullOnly = new SlidingWindowStatisticsImpl(ringBufferCapacity);
+        try {
+            for (int i = 1; i <= 4; i++) {
+                pullOnly.add(10 * i);
+            }
+            StatisticsImpl stats = (StatisticsImpl) pullOnly.getLatestStatistics();
+            assertEquals(4, stats.count());
+            assertEquals(100, stats.sum());
+            assertEquals(25.0, stats.getMean(), 0.01);
+
+            Thread.sleep(1100); // Let the first measurements leave the window
+            pullOnly.add(7);
+            pullOnly.add(7);
+            stats = (StatisticsImpl) pullOnly.getLatestStatistics();
+            assertEquals(2, stats.count());
+            assertEquals(14, stats.sum());
+            HashMap<Integer, Integer> histogram = stats.histogram();
+            assertEquals(1, histogram.size(), "Values that left the window must not linger in the histogram");
+            assertEquals(2, histogram.get(7));
+        } finally {
+            pullOnly.shutdown();
+        }
+    }
+
+    @Test
+    public void testConfigurableBucketedWindow() throws InterruptedException {
+        // The ring only stages measurements until they are counted, so a tiny one holds a busy window
+        SlidingWindowStatisticsImpl shortWindow = new SlidingWindowStatisticsImpl(4, Duration.ofMillis(200), Duration.ofMillis(50));
+        try {
+            for (int i = 0; i < 1_000; i++) {
+                shortWindow.add(i % 10);
+            }
+            StatisticsImpl stats = (StatisticsImpl) shortWindow.getLatestStatistics();
+            assertEquals(1_000, stats.count());
+            assertEquals(100, stats.histogram().get(3));
+
+            Thread.sleep(250); // Longer than the window, so every bucket has expired
+            shortWindow.add(42);
+            stats = (StatisticsImpl) shortWindow.getLatestStatistics();
+            assertEquals(1, stats.count());
+            assertEquals(42, stats.getMode());
+        } finally {
+            shortWindow.shutdown();
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowStatisticsImpl(4, Duration.ofMillis(250), Duration.ofMillis(100)));
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowStatisticsImpl(4, Duration.ofSeconds(1), Duration.ZERO));
+    }
+
+    @Test
+    public void testBucketWithManyDistinctValuesExpiresCompletely() throws InterruptedException {
+        // One bucket spans the whole window, so it has to count every distinct value itself
+        SlidingWindowStatisticsImpl singleBucket = new SlidingWindowStatisticsImpl(64, Duration.ofSeconds(1), Duration.ofSeconds(1));
+        try {
+            Thread.sleep(1000 - System.currentTimeMillis() % 1000); // Start right after a bucket boundary, so all values share the bucket
+            for (int i = -500; i <= 500; i++) {
+                singleBucket.add(i);
+                singleBucket.add(i);
+            }
+            StatisticsImpl stats = (StatisticsImpl) singleBucket.getLatestStatistics();
+            assertEquals(2_002, stats.count());
+            assertEquals(0, stats.sum());
+            assertEquals(2, stats.histogram().get(-500));
+            assertEquals(2, stats.histogram().get(500));
+
+            Thread.sleep(1050);
+            singleBucket.add(42);
+            stats = (StatisticsImpl) singleBucket.getLatestStatistics();
+            assertEquals(1, stats.count());
+            assertEquals(1, stats.histogram().size(), "Every slot of the expired bucket must be subtracted");
+        } finally {
+            singleBucket.shutdown();
+        }
+    }
+
+    @Test
+    public void testWindowWithQuantileSketch() {
+        SlidingWindowStatisticsImpl sketched = new SlidingWindowStatisticsImpl(64, Duration.ofSeconds(1), Duration.ofMillis(10), QuantileSketch.ddSketch(0.01));
+        try {
+            for (int i = 1; i <= 10_000; i++) {
+                sketched.add(i);
+            }
+            SlidingWindowStatistics.Statistics stats = sketched.getLatestStatistics();
+            assertInstanceOf(SketchStatistics.class, stats);
+            assertEquals(10_000, ((SketchStatistics) stats).count());
+            assertEquals(5_000.5, stats.getMean(), 1e-9);
+            assertEquals(9_000, stats.getPctile(90), 9_000 * 0.01);
+        } finally {
+            sketched.shutdown();
+        }
+    }
+
+    @Test
+    public void testStripedWindowCountsEveryProducer() throws InterruptedException {
+        // Stripes far smaller than what each thread adds, so producers keep merging them too
+        SlidingWindowStatisticsImpl striped = SlidingWindowStatisticsImpl.striped(64);
+        try {
+            Thread[] producers = new Thread[8];
+            for (int i = 0; i < producers.length; i++) {
+                final int threadId = i;
+                producers[i] = Thread.ofPlatform().start(() -> {
+                    for (int j = 0; j < 5_000; j++) {
+                        striped.add(threadId);
+                    }
+                });
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+
+            StatisticsImpl stats = (StatisticsImpl) striped.getLatestStatistics();
+            assertEquals(40_000, stats.count());
+            for (int i = 0; i < producers.length; i++) {
+                assertEquals(5_000, stats.histogram().get(i), "Count for measurement " + i);
+            }
+            assertEquals(3.5, stats.getMean(), 1e-9);
+        } finally {
+            striped.shutdown();
+        }
+    }
+}